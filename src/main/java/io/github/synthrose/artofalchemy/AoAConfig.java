@@ -15,6 +15,19 @@ public class AoAConfig implements ConfigData {
     }
 
     public int networkProcessingLimit = 1024;
+    // Ticks between two transfers of an essentia network
+    public int networkTickInterval = 5;
+    // Longest interval an idle network backs off to; set it to networkTickInterval to disable backing off
+    public int networkMaxInterval = 40;
+    // Plan essentia network transfers on a thread pool and apply them on the server thread
+    public boolean parallelNetworkTick = false;
+    // Threads for the parallel network tick; 0 uses one less than the number of cores
+    @ConfigEntry.Gui.Tooltip
+    public int networkThreads = 0;
+    // Essentia each network can move per tick, averaged over short bursts; 0 is unlimited
+    public int networkBandwidth = 0;
+    // Minimum number of ticks between two client syncs of the same block entity
+    public int syncInterval = 4;
     public boolean formulaLoot = true;
 
     public int vesselCapacity = 4000;
@@ -39,6 +52,8 @@ public class AoAConfig implements ConfigData {
         public float speedPlus = 0.10f;
         public int tankBasic = 4000;
         public int tankPlus = 8000;
+        // Most operations completed in one cycle when the inputs allow it; 1 disables batching
+        public int batchSize = 1;
     }
 
     @ConfigEntry.Gui.CollapsibleObject
@@ -50,6 +65,8 @@ public class AoAConfig implements ConfigData {
         public float speedPlus = 0.10f;
         public int tankBasic = 4000;
         public int tankPlus = 8000;
+        // Most operations completed in one cycle when the inputs allow it; 1 disables batching
+        public int batchSize = 1;
     }
 
     @ConfigEntry.Gui.CollapsibleObject
@@ -59,4 +76,13 @@ public class AoAConfig implements ConfigData {
         public int tankSize = 8000;
     }
 
+    @ConfigEntry.Gui.CollapsibleObject
+    public PortSettings portSettings = new PortSettings();
+    public static class PortSettings {
+        // Essentia each port can move per tick; 0 is unlimited
+        public int inserterRate = 0;
+        public int extractorRate = 0;
+        public int passiveRate = 0;
+    }
+
 }
@@ -2,12 +2,15 @@ package io.github.synthrose.artofalchemy;
 
 import io.github.synthrose.artofalchemy.block.AoABlocks;
 import io.github.synthrose.artofalchemy.blockentity.AoABlockEntities;
+import io.github.synthrose.artofalchemy.command.AoACommands;
 import io.github.synthrose.artofalchemy.dispenser.AoADispenserBehavior;
 import io.github.synthrose.artofalchemy.essentia.AoAEssentia;
 import io.github.synthrose.artofalchemy.fluid.AoAFluids;
 import io.github.synthrose.artofalchemy.gui.handler.AoAHandlers;
 import io.github.synthrose.artofalchemy.item.AoAItems;
 import io.github.synthrose.artofalchemy.network.AoANetworking;
+import io.github.synthrose.artofalchemy.network.EssentiaSubscriptions;
+import io.github.synthrose.artofalchemy.network.SyncScheduler;
 import io.github.synthrose.artofalchemy.recipe.AoARecipes;
 import io.github.synthrose.artofalchemy.transport.EssentiaNetworker;
 import io.github.synthrose.artofalchemy.util.AoALoot;
@@ -15,6 +18,9 @@ import me.sargunvohra.mcmods.autoconfig1u.AutoConfig;
 import me.sargunvohra.mcmods.autoconfig1u.serializer.GsonConfigSerializer;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.client.itemgroup.FabricItemGroupBuilder;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.event.world.WorldTickCallback;
 import net.minecraft.item.ItemGroup;
 import net.minecraft.item.ItemStack;
@@ -50,11 +56,20 @@ public class ArtOfAlchemy implements ModInitializer {
         AoADispenserBehavior.registerDispenserBehavior();
         AoANetworking.initializeNetworking();
         AoALoot.initialize();
+        AoACommands.registerCommands();
         WorldTickCallback.EVENT.register((world) -> {
             if (!world.isClient()) {
                 EssentiaNetworker.get((ServerWorld) world).tick();
+                SyncScheduler.flush((ServerWorld) world);
             }
         });
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> EssentiaNetworker.get(world).onChunkLoad(chunk.getPos()));
+        ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> EssentiaNetworker.get(world).onChunkUnload(chunk.getPos()));
+        ServerTickEvents.END_SERVER_TICK.register((server) -> EssentiaSubscriptions.prune());
+        ServerLifecycleEvents.SERVER_STOPPED.register((server) -> {
+            SyncScheduler.clear();
+            EssentiaSubscriptions.clear();
+        });
     }
 
     public static Identifier id(String name) {
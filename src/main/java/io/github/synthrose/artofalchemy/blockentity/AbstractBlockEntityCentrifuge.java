@@ -4,6 +4,7 @@ import io.github.synthrose.artofalchemy.AoAConfig;
 import io.github.synthrose.artofalchemy.essentia.Essentia;
 import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.BlockEntityType;
 import net.minecraft.state.property.DirectionProperty;
@@ -23,6 +24,9 @@ abstract public class AbstractBlockEntityCentrifuge extends BlockEntity implemen
             .setInput(true)
             .setOutput(false);
     protected EssentiaContainer[] outputs;
+    // Set when the last tick moved nothing, because the input was empty or the outputs were full; cleared by
+    // markDirty(), which pipes and vessels call whenever they change one of the containers
+    private boolean dormant = false;
 
     public AbstractBlockEntityCentrifuge(BlockEntityType<?> type) {
         super(type);
@@ -57,11 +61,38 @@ abstract public class AbstractBlockEntityCentrifuge extends BlockEntity implemen
 
     @Override
     public void tick() {
-        if (!input.isEmpty()) {
+        if (AoAProfiler.isEnabled()) {
+            AoAProfiler.profileMachine(this, this::doTick);
+        } else {
+            doTick();
+        }
+    }
+
+    protected void doTick() {
+        if (world.isClient() || dormant) {
+            return;
+        }
+        int moved = 0;
+        if (input.getCount() > 0) {
             for (EssentiaContainer output : outputs) {
-                input.pushContents(output, true);
+                moved += input.pushContents(output, true, null);
             }
         }
+        dormant = moved == 0;
+    }
+
+    @Override
+    public void markDirty() {
+        super.markDirty();
+        wake();
+    }
+
+    public void wake() {
+        dormant = false;
+    }
+
+    public boolean isDormant() {
+        return dormant;
     }
 
     protected static EssentiaContainer outputOf(Essentia... essentia) {
@@ -6,10 +6,13 @@ import io.github.synthrose.artofalchemy.ArtOfAlchemy;
 import io.github.synthrose.artofalchemy.block.BlockCalcinator;
 import io.github.synthrose.artofalchemy.gui.handler.HandlerCalcinator;
 import io.github.synthrose.artofalchemy.recipe.AoARecipes;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
 import io.github.synthrose.artofalchemy.recipe.RecipeCalcination;
 import io.github.synthrose.artofalchemy.util.AoAHelper;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import io.github.synthrose.artofalchemy.util.FuelHelper;
 import io.github.synthrose.artofalchemy.util.ImplementedInventory;
+import io.github.synthrose.artofalchemy.util.LazyStateFlag;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.fabricmc.fabric.api.tag.TagRegistry;
@@ -20,6 +23,7 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.inventory.SidedInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
@@ -46,6 +50,14 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 	protected int maxFuel = 20;
 	protected int progress = 0;
 	protected int maxProgress = getOperationTime();
+	// Recipe resolution is cached against the input item, and the machine sleeps while it is cold and can't craft
+	// until one of its inputs changes (inventory or a markDirty() from outside its own tick).
+	private RecipeCalcination recipe = null;
+	private Item recipeInput = null;
+	private int recipeGeneration = 0;
+	private boolean dormant = false;
+	private boolean ticking = false;
+	private final LazyStateFlag lit = new LazyStateFlag(BlockCalcinator.LIT, LazyStateFlag.OFF_DELAY);
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(3, ItemStack.EMPTY);
 	protected final PropertyDelegate delegate = new PropertyDelegate() {
@@ -197,6 +209,7 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 		progress = tag.getInt("progress");
 		maxFuel = tag.getInt("maxFuel");
 		maxProgress = getOperationTime();
+		wake();
 	}
 
 	@Override
@@ -216,12 +229,47 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 	}
 	
 
+	@Override
+	public void setStack(int slot, ItemStack stack) {
+		ImplementedInventory.super.setStack(slot, stack);
+		wake();
+	}
+
+	public void wake() {
+		dormant = false;
+	}
+
+	public boolean isDormant() {
+		return dormant;
+	}
+
+	protected RecipeCalcination getRecipe() {
+		Item input = items.get(0).getItem();
+		RecipeIndex index = RecipeIndex.get(world);
+		if (input != recipeInput || index.getGeneration() != recipeGeneration) {
+			recipeInput = input;
+			recipeGeneration = index.getGeneration();
+			recipe = index.getFirstMatch(AoARecipes.CALCINATION, this, world, input).orElse(null);
+		}
+		return recipe;
+	}
+
 	@Override
 	public void tick() {
+		if (AoAProfiler.isEnabled()) {
+			AoAProfiler.profileMachine(this, this::doTick);
+		} else {
+			doTick();
+		}
+	}
+
+	protected void doTick() {
 		boolean wasBurning = isBurning();
 		boolean dirty = false;
 		
-		if (!world.isClient()) {
+		if (!world.isClient() && !dormant) {
+			ticking = true;
+			boolean craftable = false;
 			ItemStack inSlot = items.get(0);
 			ItemStack fuelSlot = items.get(1);
 			
@@ -230,9 +278,8 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 			}
 			
 			if (!inSlot.isEmpty() && (isBurning() || FuelHelper.isFuel(fuelSlot))) {
-				RecipeCalcination recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.CALCINATION, this, world).orElse(null);
-				boolean craftable = canCraft(recipe);
+				RecipeCalcination recipe = getRecipe();
+				craftable = canCraft(recipe);
 				
 				if (!isBurning()) {
 					if (FuelHelper.isFuel(fuelSlot) && craftable) {
@@ -265,9 +312,14 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 			
 			if (isBurning() != wasBurning) {
 				dirty = true;
-				world.setBlockState(pos, world.getBlockState(pos).with(BlockCalcinator.LIT, isBurning()));
 			}
 			
+			// Stay awake until a pending LIT change has been written
+			boolean litPending = lit.update(world, pos, isBurning());
+			if (!isBurning() && !craftable) {
+				dormant = !litPending;
+			}
+			ticking = false;
 		}
 		
 		if (dirty) {
@@ -283,19 +335,19 @@ public class BlockEntityCalcinator extends BlockEntity implements ImplementedInv
 	@Override
 	public void markDirty() {
 		super.markDirty();
-		if (!world.isClient()) {
-			sync();
+		if (!ticking) {
+			wake();
 		}
 	}
 	
 	@Override
 	public void fromClientTag(CompoundTag tag) {
-		fromTag(world.getBlockState(pos), tag);
 	}
-	
+
+	// Clients only need the LIT state, which is part of the block state; the GUI syncs through the handler
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		return tag;
 	}
 
 	@Override
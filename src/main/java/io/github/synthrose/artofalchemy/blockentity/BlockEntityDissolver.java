@@ -8,11 +8,15 @@ import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
 import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
 import io.github.synthrose.artofalchemy.gui.handler.HandlerDissolver;
 import io.github.synthrose.artofalchemy.network.AoANetworking;
+import io.github.synthrose.artofalchemy.network.SyncScheduler;
 import io.github.synthrose.artofalchemy.recipe.AoARecipes;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
 import io.github.synthrose.artofalchemy.recipe.RecipeDissolution;
 import io.github.synthrose.artofalchemy.transport.HasAlkahest;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import io.github.synthrose.artofalchemy.util.ImplementedInventory;
+import io.github.synthrose.artofalchemy.util.LazyStateFlag;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.fabricmc.fabric.api.tag.TagRegistry;
@@ -23,6 +27,7 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.inventory.SidedInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
@@ -54,7 +59,17 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	// Status 1: Generic error (no message)
 	// Status 2: Insufficient alkahest
 	// Status 3: Full output buffer
-	private boolean lit = false;
+	private final LazyStateFlag lit = new LazyStateFlag(BlockDissolver.LIT, LazyStateFlag.OFF_DELAY);
+	private final LazyStateFlag filled = new LazyStateFlag(BlockDissolver.FILLED, 0);
+	// Recipe resolution is cached against the input item, and the machine sleeps while it can't craft until one of
+	// its inputs changes (inventory, alkahest, essentia or a markDirty() from outside its own tick).
+	private RecipeDissolution recipe = null;
+	private Item recipeInput = null;
+	private int recipeGeneration = 0;
+	private boolean dormant = false;
+	private boolean ticking = false;
+	// Operations the current cycle will complete, worked out by canCraft()
+	private int batch = 1;
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(1, ItemStack.EMPTY);
 	protected EssentiaContainer essentia;
@@ -166,7 +181,7 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	public boolean setAlkahest(int amount) {
 		if (amount >= 0 && amount <= maxAlkahest) {
 			alkahest = amount;
-			world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.FILLED, alkahest > 0));
+			filled.update(world, pos, alkahest > 0);
 			markDirty();
 			return true;
 		} else {
@@ -184,6 +199,7 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	
 	private boolean canCraft(RecipeDissolution recipe) {
 		ItemStack inSlot = items.get(0);
+		batch = 1;
 		
 		if (recipe == null || inSlot.isEmpty()) {
 			return updateStatus(1);
@@ -212,12 +228,31 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 				if (!essentia.canAcceptIgnoreIO(results)) {
 					return updateStatus(3);
 				} else {
+					if (container == ItemStack.EMPTY) {
+						batch = getBatch(results);
+						// A batch takes longer than a single operation, but only by the square root of its size
+						maxProgress = (int) (maxProgress * Math.sqrt(batch));
+					}
 					return updateStatus(0);
 				}
 			}
 		}
 	}
 	
+	// Number of operations one cycle can complete, limited by the configured batch size, the items in the input
+	// slot, the alkahest left and the room in the tank.
+	private int getBatch(EssentiaStack results) {
+		int batch = Math.min(AoAConfig.get().dissolverSettings.batchSize, items.get(0).getCount());
+		int perItem = results.getCount();
+		if (perItem > 0) {
+			batch = Math.min(batch, alkahest / perItem);
+			if (!essentia.hasUnlimitedCapacity()) {
+				batch = Math.min(batch, essentia.getFreeCapacity() / perItem);
+			}
+		}
+		return Math.max(batch, 1);
+	}
+	
 	// Be sure to check canCraft() first!
 	private void doCraft(RecipeDissolution recipe) {
 		ItemStack inSlot = items.get(0);
@@ -229,11 +264,12 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 			factor *= 1.0 - (float) inSlot.getDamage() / inSlot.getMaxDamage();
 		}
 		results.multiply(factor);
+		results.multiply(batch);
 		
 		if (container != ItemStack.EMPTY) {
 			items.set(0, container.copy());
 		} else {
-			inSlot.decrement(1);
+			inSlot.decrement(batch);
 		}
 		
 		essentia.addEssentia(results);
@@ -262,6 +298,7 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 		status = tag.getInt("status");
 		essentia = new EssentiaContainer(tag.getCompound("essentia"));
 		maxAlkahest = getTankSize();
+		wake();
 	}
 
 	@Override
@@ -275,11 +312,45 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	}
 
 
+	@Override
+	public void setStack(int slot, ItemStack stack) {
+		ImplementedInventory.super.setStack(slot, stack);
+		wake();
+	}
+
+	public void wake() {
+		dormant = false;
+	}
+
+	public boolean isDormant() {
+		return dormant;
+	}
+
+	protected RecipeDissolution getRecipe() {
+		Item input = items.get(0).getItem();
+		RecipeIndex index = RecipeIndex.get(world);
+		if (input != recipeInput || index.getGeneration() != recipeGeneration) {
+			recipeInput = input;
+			recipeGeneration = index.getGeneration();
+			recipe = index.getFirstMatch(AoARecipes.DISSOLUTION, this, world, input).orElse(null);
+		}
+		return recipe;
+	}
+
 	@Override
 	public void tick() {
+		if (AoAProfiler.isEnabled()) {
+			AoAProfiler.profileMachine(this, this::doTick);
+		} else {
+			doTick();
+		}
+	}
+
+	protected void doTick() {
 		boolean dirty = false;
 		
-		if (!world.isClient()) {
+		if (!world.isClient() && !dormant) {
+			ticking = true;
 			ItemStack inSlot = items.get(0);
 			boolean canWork = false;
 			
@@ -288,38 +359,31 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 			} else if (!hasAlkahest()) {
 				updateStatus(2);
 			} else {
-				RecipeDissolution recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.DISSOLUTION, this, world).orElse(null);
+				RecipeDissolution recipe = getRecipe();
 				canWork = canCraft(recipe);
 			
 				if (canWork) {
 					if (progress < maxProgress) {
-						if (!lit) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, true));
-							lit = true;
-						}
 						progress++;
 					}
 					if (progress >= maxProgress) {
 						progress -= maxProgress;
 						doCraft(recipe);
-						if (alkahest <= 0) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.FILLED, false));
-						}
+						filled.update(world, pos, alkahest > 0);
 						dirty = true;
 					}
 				}
 			}
 			
+			// Stay awake until a pending LIT change has been written
+			boolean litPending = lit.update(world, pos, canWork);
 			if (!canWork) {
 				if (progress != 0) {
 					progress = 0;
 				}
-				if (lit) {
-					lit = false;
-					world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, false));
-				}
+				dormant = !litPending;
 			}
+			ticking = false;
 		}
 		
 		if (dirty) {
@@ -335,8 +399,11 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	@Override
 	public void markDirty() {
 		super.markDirty();
+		if (!ticking) {
+			wake();
+		}
 		if (!world.isClient()) {
-			sync();
+			SyncScheduler.schedule(this);
 		}
 	}
 	
@@ -348,12 +415,14 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 
 	@Override
 	public void fromClientTag(CompoundTag tag) {
-		fromTag(world.getBlockState(pos), tag);
+		essentia.fromClientTag(tag.getCompound("essentia"));
 	}
 
+	// The client only needs the essentia the GUI opens with; the rest syncs through the handler
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		tag.put("essentia", essentia.toClientTag());
+		return tag;
 	}
 	
 	@Override
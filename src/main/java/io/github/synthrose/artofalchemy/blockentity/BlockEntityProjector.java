@@ -2,12 +2,15 @@ package io.github.synthrose.artofalchemy.blockentity;
 
 import io.github.cottonmc.cotton.gui.PropertyDelegateHolder;
 import io.github.synthrose.artofalchemy.AoAConfig;
-import io.github.synthrose.artofalchemy.block.BlockDissolver;
+import io.github.synthrose.artofalchemy.block.BlockProjector;
 import io.github.synthrose.artofalchemy.gui.handler.HandlerProjector;
 import io.github.synthrose.artofalchemy.recipe.AoARecipes;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
 import io.github.synthrose.artofalchemy.recipe.RecipeProjection;
 import io.github.synthrose.artofalchemy.transport.HasAlkahest;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import io.github.synthrose.artofalchemy.util.ImplementedInventory;
+import io.github.synthrose.artofalchemy.util.LazyStateFlag;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.minecraft.block.BlockState;
@@ -17,6 +20,7 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.inventory.SidedInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
@@ -42,7 +46,14 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 	private int maxAlkahest = getTankSize();
 	private int progress = 0;
 	private int maxProgress = getOperationTime();
-	private boolean lit = false;
+	private final LazyStateFlag lit = new LazyStateFlag(BlockProjector.LIT, LazyStateFlag.OFF_DELAY);
+	// Recipe resolution is cached against the input item, and the machine sleeps while it can't craft until one of
+	// its inputs changes (inventory, alkahest or a markDirty() from outside its own tick).
+	private RecipeProjection recipe = null;
+	private Item recipeInput = null;
+	private int recipeGeneration = 0;
+	private boolean dormant = false;
+	private boolean ticking = false;
 
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(2, ItemStack.EMPTY);
 	protected final PropertyDelegate delegate = new PropertyDelegate() {
@@ -190,6 +201,7 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 		progress = tag.getInt("progress");
 		maxProgress = getOperationTime();
 		maxAlkahest = getTankSize();
+		wake();
 	}
 
 	@Override
@@ -202,27 +214,56 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 		return slot == 0;
 	}
 
+	@Override
+	public void setStack(int slot, ItemStack stack) {
+		ImplementedInventory.super.setStack(slot, stack);
+		wake();
+	}
+
+	public void wake() {
+		dormant = false;
+	}
+
+	public boolean isDormant() {
+		return dormant;
+	}
+
+	protected RecipeProjection getRecipe() {
+		Item input = items.get(0).getItem();
+		RecipeIndex index = RecipeIndex.get(world);
+		if (input != recipeInput || index.getGeneration() != recipeGeneration) {
+			recipeInput = input;
+			recipeGeneration = index.getGeneration();
+			recipe = index.getFirstMatch(AoARecipes.PROJECTION, this, world, input).orElse(null);
+		}
+		return recipe;
+	}
+
 	@Override
 	public void tick() {
+		if (AoAProfiler.isEnabled()) {
+			AoAProfiler.profileMachine(this, this::doTick);
+		} else {
+			doTick();
+		}
+	}
+
+	protected void doTick() {
 		boolean dirty = false;
 		
-		if (!world.isClient()) {
+		if (!world.isClient() && !dormant) {
+			ticking = true;
 			ItemStack inSlot = items.get(0);
 			boolean canWork = false;
 			
 			if (inSlot.isEmpty() || !hasAlkahest()) {
 				canWork = false;
 			} else {
-				RecipeProjection recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.PROJECTION, this, world).orElse(null);
+				RecipeProjection recipe = getRecipe();
 				canWork = canCraft(recipe);
 			
 				if (canWork) {
 					if (progress < maxProgress) {
-						if (!lit) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, true));
-							lit = true;
-						}
 						progress++;
 					}
 					if (progress >= maxProgress) {
@@ -233,15 +274,15 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 				}
 			}
 			
+			// Stay awake until a pending LIT change has been written
+			boolean litPending = lit.update(world, pos, canWork);
 			if (!canWork) {
 				if (progress != 0) {
 					progress = 0;
 				}
-				if (lit) {
-					lit = false;
-					world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, false));
-				}
+				dormant = !litPending;
 			}
+			ticking = false;
 		}
 		
 		if (dirty) {
@@ -257,8 +298,8 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 	@Override
 	public void markDirty() {
 		super.markDirty();
-		if (!world.isClient()) {
-			sync();
+		if (!ticking) {
+			wake();
 		}
 	}
 	
@@ -269,12 +310,12 @@ public class BlockEntityProjector extends BlockEntity implements ImplementedInve
 
 	@Override
 	public void fromClientTag(CompoundTag tag) {
-		fromTag(world.getBlockState(pos), tag);
 	}
 
+	// Clients only need the LIT state, which is part of the block state; the GUI syncs through the handler
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		return tag;
 	}
 	
 	@Override
@@ -8,11 +8,15 @@ import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
 import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
 import io.github.synthrose.artofalchemy.gui.handler.HandlerSynthesizer;
 import io.github.synthrose.artofalchemy.network.AoANetworking;
+import io.github.synthrose.artofalchemy.network.SyncScheduler;
 import io.github.synthrose.artofalchemy.recipe.AoARecipes;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
 import io.github.synthrose.artofalchemy.recipe.RecipeSynthesis;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
 import io.github.synthrose.artofalchemy.util.AoAHelper;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import io.github.synthrose.artofalchemy.util.ImplementedInventory;
+import io.github.synthrose.artofalchemy.util.LazyStateFlag;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.fabricmc.fabric.api.tag.TagRegistry;
@@ -58,7 +62,20 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	// Status 4: Needs essentia
 	// Status 5: Needs container
 	// Status 6: Target is too complex
-	private boolean lit = false;
+	private final LazyStateFlag lit = new LazyStateFlag(BlockSynthesizer.LIT, LazyStateFlag.OFF_DELAY);
+	// Recipe resolution is cached against the target item, and the machine sleeps while it can't craft until one of
+	// its inputs changes (inventory, essentia or a markDirty() from outside its own tick).
+	private RecipeSynthesis recipe = null;
+	private Item recipeTarget = null;
+	private int recipeGeneration = 0;
+	private EssentiaStack requirements = new EssentiaStack();
+	private boolean dormant = false;
+	private boolean ticking = false;
+	// Operations the current cycle will complete, worked out by canCraft()
+	private int batch = 1;
+	// The array this synthesizer is a member of, if any; arrayChecked is set once it has looked for neighbours
+	private SynthesizerArray array = null;
+	private boolean arrayChecked = false;
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(3, ItemStack.EMPTY);
 	protected EssentiaContainer essentiaContainer;
@@ -162,6 +179,7 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		ItemStack inSlot = items.get(0);
 		ItemStack outSlot = items.get(1);
 		ItemStack targetSlot = items.get(2);
+		batch = 1;
 		
 		if (recipe == null || targetSlot.isEmpty()) {
 			return updateStatus(2);
@@ -198,10 +216,13 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 					return updateStatus(5);
 				}
 			} else {
+				batch = getBatch(essentia, cost, target);
 				maxProgress = (int) Math.sqrt(essentia.getCount() / getSpeedMod());
 				if (maxProgress < 2/getSpeedMod()) {
 					maxProgress = (int) (2/getSpeedMod());
 				}
+				// A batch takes longer than a single operation, but only by the square root of its size
+				maxProgress = (int) (maxProgress * Math.sqrt(batch));
 				if (outSlot.isEmpty()) {
 					return updateStatus(0);
 				} else if (outSlot.getItem() == target) {
@@ -217,6 +238,24 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		}
 	}
 	
+	// Number of operations one cycle can complete, limited by the configured batch size, the materia and essentia
+	// on hand and the room left in the output slot. Recipes that fill a container always craft one at a time.
+	private int getBatch(EssentiaStack essentia, int cost, Item target) {
+		ItemStack inSlot = items.get(0);
+		ItemStack outSlot = items.get(1);
+		int batch = AoAConfig.get().synthesizerSettings.batchSize;
+		if (cost > 0) {
+			batch = Math.min(batch, inSlot.getCount() / cost);
+		}
+		batch = Math.min(batch, essentiaContainer.getContents().countMultiples(essentia));
+		if (outSlot.isEmpty()) {
+			batch = Math.min(batch, target.getMaxCount());
+		} else {
+			batch = Math.min(batch, outSlot.getMaxCount() - outSlot.getCount());
+		}
+		return Math.max(batch, 1);
+	}
+	
 	// Be sure to check canCraft() first!
 	private void doCraft(RecipeSynthesis recipe) {
 		ItemStack inSlot = items.get(0);
@@ -230,12 +269,13 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		Item target = AoAHelper.getTarget(targetSlot);
 		
 		if (container != Ingredient.EMPTY || outSlot.isEmpty()) {
-			items.set(1, new ItemStack(target));
+			items.set(1, new ItemStack(target, batch));
 		} else {
-			outSlot.increment(1);
+			outSlot.increment(batch);
 		}
 		
-		inSlot.decrement(cost);
+		inSlot.decrement(cost * batch);
+		essentia.multiply(batch);
 		essentiaContainer.subtractEssentia(essentia);
 //		this.addXp(-xpCost);
 	}
@@ -245,7 +285,7 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		tag.putInt("progress", progress);
 		tag.putInt("max_progress", maxProgress);
 		tag.putInt("status", status);
-		tag.put("essentia", essentiaContainer.toTag());
+		tag.put("essentia", (array != null ? array.shareOf(this) : essentiaContainer).toTag());
 		Inventories.toTag(tag, items);
 		return super.toTag(tag);
 	}
@@ -253,11 +293,15 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public void fromTag(BlockState state, CompoundTag tag) {
 		super.fromTag(state, tag);
+		if (array != null) {
+			array.dissolve(null);
+		}
 		Inventories.fromTag(tag, items);
 		progress = tag.getInt("progress");
 		maxProgress = tag.getInt("max_progress");
 		status = tag.getInt("status");
 		essentiaContainer = new EssentiaContainer(tag.getCompound("essentia"));
+		wake();
 	}
 
 	@Override
@@ -280,20 +324,102 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	}
 	
 
+	@Override
+	public void setStack(int slot, ItemStack stack) {
+		ImplementedInventory.super.setStack(slot, stack);
+		wake();
+	}
+
+	public void wake() {
+		dormant = false;
+	}
+
+	public boolean isDormant() {
+		return dormant;
+	}
+
+	public SynthesizerArray getArray() {
+		return array;
+	}
+
+	void joinArray(SynthesizerArray array, EssentiaContainer pool) {
+		this.array = array;
+		this.arrayChecked = true;
+		this.essentiaContainer = pool;
+		this.recipeTarget = null;
+	}
+
+	// A null container keeps the current one, for members that are being removed
+	void leaveArray(EssentiaContainer container) {
+		this.array = null;
+		this.arrayChecked = false;
+		if (container != null) {
+			this.essentiaContainer = container;
+		}
+	}
+
+	@Override
+	public void markRemoved() {
+		super.markRemoved();
+		if (array != null) {
+			array.dissolve(this);
+		}
+	}
+
+	protected RecipeSynthesis getRecipe() {
+		Item target = AoAHelper.getTarget(items.get(2));
+		RecipeIndex index = RecipeIndex.get(world);
+		if (target != recipeTarget || index.getGeneration() != recipeGeneration) {
+			recipeTarget = target;
+			recipeGeneration = index.getGeneration();
+			if (array != null) {
+				recipe = array.resolve(this, target);
+			} else {
+				recipe = index.getFirstMatch(AoARecipes.SYNTHESIS, this, world, target).orElse(null);
+			}
+			requirements = (recipe == null || items.get(2).isEmpty()) ? new EssentiaStack() : recipe.getEssentia();
+		}
+		return recipe;
+	}
+
 	@Override
 	public void tick() {
+		if (AoAProfiler.isEnabled()) {
+			AoAProfiler.profileMachine(this, this::doTick);
+		} else {
+			doTick();
+		}
+	}
+
+	// Members of an array are ticked by its controller instead
+	protected void doTick() {
+		if (!world.isClient()) {
+			if (array == null && !arrayChecked) {
+				arrayChecked = true;
+				SynthesizerArray.form(this);
+			}
+			if (array != null) {
+				if (array.getController() == this) {
+					array.tick();
+				}
+				return;
+			}
+		}
+		tickMember();
+	}
+
+	void tickMember() {
 		boolean dirty = false;
 		
-		if (!world.isClient()) {
-			ItemStack inSlot = items.get(0);
+		if (!world.isClient() && !dormant) {
+			ticking = true;
 			ItemStack targetSlot = items.get(2);
 			boolean isWorking = false;
 			
 			if (targetSlot.isEmpty()) {
 				updateStatus(2);
 			} else {
-				RecipeSynthesis recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.SYNTHESIS, this, world).orElse(null);
+				RecipeSynthesis recipe = getRecipe();
 				
 				if (canCraft(recipe)) {
 					isWorking = true;
@@ -301,10 +427,6 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 			
 				if (isWorking) {
 					if (progress < maxProgress) {
-						if (!lit) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockSynthesizer.LIT, true));
-							lit = true;
-						}
 						progress++;
 					}
 					if (progress >= maxProgress) {
@@ -315,15 +437,15 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 				}
 			}
 			
+			// Stay awake until a pending LIT change has been written
+			boolean litPending = lit.update(world, pos, isWorking);
 			if (!isWorking) {
 				if (progress != 0) {
 					progress = 0;
 				}
-				if (lit) {
-					lit = false;
-					world.setBlockState(pos, world.getBlockState(pos).with(BlockSynthesizer.LIT, false));
-				}
+				dormant = !litPending;
 			}
+			ticking = false;
 		}
 		
 		if (dirty) {
@@ -339,19 +461,31 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public void markDirty() {
 		super.markDirty();
+		if (!ticking) {
+			// The essentia pool is shared, so a change from outside can let any member of the array work again
+			if (array != null) {
+				array.wake();
+			} else {
+				wake();
+			}
+		}
 		if (!world.isClient()) {
-			sync();
+			SyncScheduler.schedule(this);
 		}
 	}
 
 	@Override
 	public void fromClientTag(CompoundTag tag) {
-		fromTag(world.getBlockState(pos), tag);
+		essentiaContainer.fromClientTag(tag.getCompound("essentia"));
+		requirements = EssentiaStack.fromRawArray(tag.getIntArray("requirements"));
 	}
 
+	// The client only needs the essentia and requirements the GUI opens with; the rest syncs through the handler
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		tag.put("essentia", essentiaContainer.toClientTag());
+		tag.putIntArray("requirements", getRequirements().toRawArray());
+		return tag;
 	}
 	
 	@Override
@@ -365,14 +499,14 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		AoANetworking.sendEssentiaPacketWithRequirements(world, pos, 0, essentiaContainer, requirements);
 	}
 	
+	// Computed along with the cached recipe, so only when the target changes. The stack is replaced rather than
+	// modified, so callers must not modify it either; EssentiaSync relies on that to skip unchanged requirements.
 	public EssentiaStack getRequirements() {
-		RecipeSynthesis recipe = world.getRecipeManager()
-				.getFirstMatch(AoARecipes.SYNTHESIS, this, world).orElse(null);
-		if (recipe == null || items.get(2).isEmpty()) {
-			return new EssentiaStack();
-		} else {
-			return recipe.getEssentia();
+		// Clients get them from the server, since they don't have the whole inventory
+		if (world != null && !world.isClient()) {
+			getRecipe();
 		}
+		return requirements;
 	}
 	
 	@Override
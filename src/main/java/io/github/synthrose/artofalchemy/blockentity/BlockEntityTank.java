@@ -1,10 +1,11 @@
 package io.github.synthrose.artofalchemy.blockentity;
 
 import io.github.synthrose.artofalchemy.AoAConfig;
-import io.github.synthrose.artofalchemy.block.AoABlocks;
 import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
 import io.github.synthrose.artofalchemy.network.AoANetworking;
+import io.github.synthrose.artofalchemy.network.SyncScheduler;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
@@ -18,6 +19,11 @@ public class BlockEntityTank extends BlockEntity implements Tickable, HasEssenti
             .setCapacity(AoAConfig.get().tankCapacity)
             .setInput(true)
             .setOutput(true);
+    // Bumped whenever the contents may have changed, so RendererTank knows when to rebuild its mesh
+    protected int renderVersion = 0;
+    // The column this tank is stacked in, if any; columnChecked is set once it has looked for neighbours
+    private TankColumn column = null;
+    private boolean columnChecked = false;
 
     public BlockEntityTank() {
         super(AoABlockEntities.TANK);
@@ -42,33 +48,80 @@ public class BlockEntityTank extends BlockEntity implements Tickable, HasEssenti
         return 1;
     }
 
+    public TankColumn getColumn() {
+        return column;
+    }
+
+    void joinColumn(TankColumn column, EssentiaContainer pool) {
+        this.column = column;
+        this.columnChecked = true;
+        this.essentia = pool;
+    }
+
+    // A null container keeps the current one, for members that are being removed
+    void leaveColumn(EssentiaContainer container) {
+        this.column = null;
+        this.columnChecked = false;
+        if (container != null) {
+            this.essentia = container;
+        }
+    }
+
+    @Override
+    public void markRemoved() {
+        super.markRemoved();
+        if (column != null) {
+            column.dissolve(this);
+        }
+    }
+
+    public int getRenderVersion() {
+        return renderVersion;
+    }
+
     @Override
     public CompoundTag toTag(CompoundTag tag) {
-        tag.put("essentia", essentia.toTag());
+        tag.put("essentia", (column != null ? column.shareOf(this) : essentia).toTag());
         return super.toTag(tag);
     }
 
     @Override
     public void fromTag(BlockState state, CompoundTag tag) {
         super.fromTag(state, tag);
+        if (column != null) {
+            column.dissolve(null);
+        }
         essentia = new EssentiaContainer(tag.getCompound("essentia"));
     }
 
     @Override
     public void fromClientTag(CompoundTag tag) {
-        fromTag(world.getBlockState(pos), tag);
+        essentia.fromClientTag(tag.getCompound("essentia"));
+        renderVersion++;
     }
 
+    // RendererTank only needs the fill level and the color. Clients don't pool columns; each tank gets its share.
     @Override
     public CompoundTag toClientTag(CompoundTag tag) {
-        return toTag(tag);
+        tag.put("essentia", (column != null ? column.shareOf(this) : essentia).toClientTag());
+        return tag;
     }
 
+    // A change to a column's pool changes every member's share and comparator output, so they all get marked
     @Override
     public void markDirty() {
+        if (column != null && !world.isClient()) {
+            column.markDirty();
+        } else {
+            markMemberDirty();
+        }
+    }
+
+    void markMemberDirty() {
         super.markDirty();
+        renderVersion++;
         if (!world.isClient()) {
-            sync();
+            SyncScheduler.schedule(this);
         }
     }
 
@@ -80,13 +133,18 @@ public class BlockEntityTank extends BlockEntity implements Tickable, HasEssenti
 
     @Override
     public void tick() {
-        if (!essentia.isEmpty() && world.getBlockState(pos).getBlock() == AoABlocks.TANK && world.getBlockState(pos.down()).getBlock() == AoABlocks.TANK) {
-            BlockEntity other = world.getBlockEntity(pos.down());
-            if (other instanceof BlockEntityTank) {
-                essentia.mixPushContents(((BlockEntityTank) other).essentia);
-                this.markDirty();
-                other.markDirty();
-            }
+        if (AoAProfiler.isEnabled()) {
+            AoAProfiler.profileMachine(this, this::doTick);
+        } else {
+            doTick();
+        }
+    }
+
+    // Stacked tanks share their column's pool, so there's nothing to balance; a tank only looks for its column once
+    protected void doTick() {
+        if (!world.isClient() && column == null && !columnChecked) {
+            columnChecked = true;
+            TankColumn.form(this);
         }
     }
 }
@@ -0,0 +1,189 @@
+package io.github.synthrose.artofalchemy.blockentity;
+
+import io.github.synthrose.artofalchemy.essentia.Essentia;
+import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
+import io.github.synthrose.artofalchemy.recipe.AoARecipes;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
+import io.github.synthrose.artofalchemy.recipe.RecipeSynthesis;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.item.Item;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+
+import java.util.*;
+
+// A group of adjacent synthesizers of the same type that tick as one unit. The first member is the controller and
+// ticks every member; the others skip their own tick. Members share one recipe resolution per target item and one
+// pooled essentia container, so pipes feeding any member feed the whole array.
+// Arrays never cross chunk borders, so all members are loaded, saved and unloaded together. Each member saves an
+// even share of the pool, and the pool is rebuilt from those shares when the array forms again after loading.
+public class SynthesizerArray {
+
+	public static final int MAX_MEMBERS = 64;
+
+	private final World world;
+	private final List<BlockEntitySynthesizer> members;
+	private final EssentiaContainer pool;
+	private final Map<Item, Optional<RecipeSynthesis>> recipes = new HashMap<>();
+	private int recipeGeneration = 0;
+
+	private SynthesizerArray(World world, List<BlockEntitySynthesizer> members) {
+		this.world = world;
+		this.members = members;
+		int capacity = 0;
+		EssentiaStack contents = new EssentiaStack();
+		for (BlockEntitySynthesizer member : members) {
+			capacity += member.getTankSize();
+			contents.add(member.essentiaContainer.getContents());
+		}
+		pool = new EssentiaContainer()
+				.setCapacity(capacity)
+				.setInput(true)
+				.setOutput(false)
+				.setContents(contents);
+	}
+
+	// Groups the synthesizers connected to the origin into a new array. Only synthesizers that aren't in another
+	// array are taken, so arrays never steal each other's members and a cluster larger than MAX_MEMBERS settles into
+	// several arrays instead of re-forming every tick. Returns null if the origin has no free neighbours to group with.
+	static SynthesizerArray form(BlockEntitySynthesizer origin) {
+		World world = origin.getWorld();
+		BlockPos start = origin.getPos();
+		List<BlockEntitySynthesizer> found = new ArrayList<>();
+		Set<BlockPos> visited = new HashSet<>();
+		Deque<BlockPos> frontier = new ArrayDeque<>();
+		found.add(origin);
+		visited.add(start);
+		frontier.add(start);
+		while (!frontier.isEmpty() && found.size() < MAX_MEMBERS) {
+			BlockPos current = frontier.poll();
+			for (Direction dir : Direction.values()) {
+				BlockPos next = current.offset(dir);
+				if ((next.getX() >> 4) != (start.getX() >> 4) || (next.getZ() >> 4) != (start.getZ() >> 4) ||
+						!visited.add(next)) {
+					continue;
+				}
+				BlockEntity be = world.getBlockEntity(next);
+				if (be instanceof BlockEntitySynthesizer && be.getType() == origin.getType() && !be.isRemoved() &&
+						((BlockEntitySynthesizer) be).getArray() == origin.getArray() && found.size() < MAX_MEMBERS) {
+					found.add((BlockEntitySynthesizer) be);
+					frontier.add(next);
+				}
+			}
+		}
+		if (found.size() < 2) {
+			return null;
+		}
+
+		if (origin.getArray() != null) {
+			origin.getArray().dissolve(null);
+		}
+		SynthesizerArray array = new SynthesizerArray(world, found);
+		for (BlockEntitySynthesizer member : found) {
+			member.joinArray(array, array.pool);
+		}
+		array.wake();
+		return array;
+	}
+
+	public BlockEntitySynthesizer getController() {
+		return members.get(0);
+	}
+
+	public List<BlockEntitySynthesizer> getMembers() {
+		return members;
+	}
+
+	public EssentiaContainer getPool() {
+		return pool;
+	}
+
+	void tick() {
+		for (BlockEntitySynthesizer member : members) {
+			member.tickMember();
+		}
+	}
+
+	void wake() {
+		for (BlockEntitySynthesizer member : members) {
+			member.wake();
+		}
+	}
+
+	// Resolves the recipe for a target once for the whole array, until the recipe index changes
+	RecipeSynthesis resolve(BlockEntitySynthesizer member, Item target) {
+		RecipeIndex index = RecipeIndex.get(world);
+		if (index.getGeneration() != recipeGeneration) {
+			recipes.clear();
+			recipeGeneration = index.getGeneration();
+		}
+		return recipes.computeIfAbsent(target,
+				(key) -> index.getFirstMatch(AoARecipes.SYNTHESIS, member, world, key)).orElse(null);
+	}
+
+	// A container holding the member's even share of the pool
+	EssentiaContainer shareOf(BlockEntitySynthesizer member) {
+		return shareContainer(member, split().get(members.indexOf(member)));
+	}
+
+	private EssentiaContainer shareContainer(BlockEntitySynthesizer member, EssentiaStack share) {
+		return new EssentiaContainer()
+				.setCapacity(member.getTankSize())
+				.setInput(true)
+				.setOutput(false)
+				.setContents(share);
+	}
+
+	// Splits the pool between the members in order. Each member takes an even share of what the members before it
+	// left, rounded up and clamped to its own capacity, so whatever it can't hold goes to the members after it.
+	// Within a share every essentia keeps its proportion of what is left, rounded down, with the leftover units
+	// handed out one per essentia, so the shares always add back up to the pool.
+	private List<EssentiaStack> split() {
+		EssentiaStack remaining = pool.getContents().copy();
+		List<Essentia> order = remaining.sortedList();
+		List<EssentiaStack> shares = new ArrayList<>(members.size());
+		for (int i = 0; i < members.size(); i++) {
+			long total = remaining.getCount();
+			int left = members.size() - i;
+			long target = Math.min(members.get(i).getTankSize(), (total + left - 1) / left);
+			EssentiaStack share = new EssentiaStack();
+			if (target > 0) {
+				long given = 0;
+				for (Essentia essentia : order) {
+					int amount = (int) (remaining.getCount(essentia) * target / total);
+					share.set(essentia, amount);
+					given += amount;
+				}
+				for (Essentia essentia : order) {
+					if (given >= target) {
+						break;
+					}
+					if (remaining.getCount(essentia) > share.getCount(essentia)) {
+						share.add(essentia, 1);
+						given++;
+					}
+				}
+				remaining.subtract(share);
+			}
+			shares.add(share);
+		}
+		return shares;
+	}
+
+	// Hands every member its share of the pool and breaks the array up. The share of a removed member is lost, just
+	// like the contents of a single synthesizer that is broken. The remaining members look for a new array later.
+	void dissolve(BlockEntitySynthesizer removed) {
+		List<EssentiaStack> shares = split();
+		for (int i = 0; i < members.size(); i++) {
+			BlockEntitySynthesizer member = members.get(i);
+			if (member != removed) {
+				member.leaveArray(shareContainer(member, shares.get(i)));
+			} else {
+				member.leaveArray(null);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package io.github.synthrose.artofalchemy.blockentity;
+
+import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A vertical stack of connected tanks sharing one pooled essentia container, so contents even out instantly and the
+// column needs no per-tick balancing. The pool fills the column from the bottom: each member's share, which is what
+// it saves and syncs to clients, is its slice of that fill level, holding every essentia in the pool's proportions.
+// A column never leaves its chunk, so like a SynthesizerArray all members are loaded, saved and unloaded together.
+public class TankColumn {
+
+	// Bottom to top
+	private final List<BlockEntityTank> members;
+	private final EssentiaContainer pool;
+	// Total capacity of the members up to and including each index
+	private final int[] cumulativeCapacity;
+
+	private TankColumn(List<BlockEntityTank> members) {
+		this.members = members;
+		this.cumulativeCapacity = new int[members.size()];
+		int capacity = 0;
+		EssentiaStack contents = new EssentiaStack();
+		for (int i = 0; i < members.size(); i++) {
+			EssentiaContainer container = members.get(i).getContainer();
+			capacity += container.getCapacity();
+			cumulativeCapacity[i] = capacity;
+			contents.add(container.getContents());
+		}
+		pool = new EssentiaContainer()
+				.setCapacity(capacity)
+				.setInput(true)
+				.setOutput(true)
+				.setContents(contents);
+	}
+
+	// Groups the tanks stacked with the origin into a new column, dissolving any columns they were part of.
+	// Returns null if the origin isn't stacked with any other tank.
+	static TankColumn form(BlockEntityTank origin) {
+		World world = origin.getWorld();
+		BlockPos bottom = origin.getPos();
+		while (getTank(world, bottom.down()) != null) {
+			bottom = bottom.down();
+		}
+		List<BlockEntityTank> found = new ArrayList<>();
+		for (BlockEntityTank tank = getTank(world, bottom); tank != null; tank = getTank(world, tank.getPos().up())) {
+			found.add(tank);
+		}
+		if (found.size() < 2) {
+			return null;
+		}
+
+		for (BlockEntityTank member : found) {
+			if (member.getColumn() != null) {
+				member.getColumn().dissolve(null);
+			}
+		}
+		TankColumn column = new TankColumn(found);
+		for (BlockEntityTank member : found) {
+			member.joinColumn(column, column.pool);
+		}
+		column.markDirty();
+		return column;
+	}
+
+	private static BlockEntityTank getTank(World world, BlockPos pos) {
+		BlockEntity be = world.getBlockEntity(pos);
+		if (be instanceof BlockEntityTank && !be.isRemoved()) {
+			return (BlockEntityTank) be;
+		} else {
+			return null;
+		}
+	}
+
+	public List<BlockEntityTank> getMembers() {
+		return members;
+	}
+
+	public EssentiaContainer getPool() {
+		return pool;
+	}
+
+	// Every member shows a slice of the pool and reads the pool for its comparator output, so a change to the pool
+	// saves, syncs and updates the comparators of all of them
+	void markDirty() {
+		for (BlockEntityTank member : members) {
+			member.markMemberDirty();
+		}
+	}
+
+	// A container holding the member's slice of the pool. Each essentia is split by rounding its running total down
+	// at every member, so the slices always add back up to the pool.
+	EssentiaContainer shareOf(BlockEntityTank member) {
+		int index = members.indexOf(member);
+		long total = pool.getCount();
+		long below = index == 0 ? 0 : Math.min(total, cumulativeCapacity[index - 1]);
+		long through = Math.min(total, cumulativeCapacity[index]);
+		EssentiaStack share = new EssentiaStack();
+		if (total > 0) {
+			pool.getContents().forEach((essentia, amount) ->
+					share.set(essentia, (int) (amount * through / total - amount * below / total)));
+		}
+		int capacity = cumulativeCapacity[index] - (index == 0 ? 0 : cumulativeCapacity[index - 1]);
+		return new EssentiaContainer()
+				.setCapacity(capacity)
+				.setInput(true)
+				.setOutput(true)
+				.setContents(share);
+	}
+
+	// Hands every member its share of the pool and breaks the column up. The share of a removed member is lost, just
+	// like the contents of a single tank that is broken. The remaining members look for a new column later.
+	void dissolve(BlockEntityTank removed) {
+		for (BlockEntityTank member : members) {
+			if (member != removed) {
+				member.leaveColumn(shareOf(member));
+			} else {
+				member.leaveColumn(null);
+			}
+		}
+		for (BlockEntityTank member : members) {
+			if (member != removed && member.getWorld() != null) {
+				member.markMemberDirty();
+			}
+		}
+	}
+
+}
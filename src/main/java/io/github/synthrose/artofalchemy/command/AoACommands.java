@@ -0,0 +1,66 @@
+package io.github.synthrose.artofalchemy.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
+import net.fabricmc.fabric.api.command.v1.CommandRegistrationCallback;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.List;
+
+public class AoACommands {
+
+    public static void registerCommands() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, dedicated) -> register(dispatcher));
+    }
+
+    // /aoa profile <start|stop|reset|report [count]>
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(CommandManager.literal("aoa")
+                .requires((source) -> source.hasPermissionLevel(2))
+                .then(CommandManager.literal("profile")
+                        .then(CommandManager.literal("start").executes((ctx) -> {
+                            AoAProfiler.reset();
+                            AoAProfiler.setEnabled(true);
+                            ctx.getSource().sendFeedback(new LiteralText("Essentia profiling started"), true);
+                            return 1;
+                        }))
+                        .then(CommandManager.literal("stop").executes((ctx) -> {
+                            AoAProfiler.setEnabled(false);
+                            ctx.getSource().sendFeedback(new LiteralText("Essentia profiling stopped"), true);
+                            return 1;
+                        }))
+                        .then(CommandManager.literal("reset").executes((ctx) -> {
+                            AoAProfiler.reset();
+                            ctx.getSource().sendFeedback(new LiteralText("Essentia profiling samples cleared"), false);
+                            return 1;
+                        }))
+                        .then(CommandManager.literal("report")
+                                .executes((ctx) -> report(ctx.getSource(), 10))
+                                .then(CommandManager.argument("count", IntegerArgumentType.integer(1, 100))
+                                        .executes((ctx) -> report(ctx.getSource(),
+                                                IntegerArgumentType.getInteger(ctx, "count")))))));
+    }
+
+    private static int report(ServerCommandSource source, int count) {
+        List<AoAProfiler.Entry> entries = AoAProfiler.getTop(count);
+        source.sendFeedback(new LiteralText(String.format("%d samples (%s), recipe index hits/misses: %d/%d",
+                AoAProfiler.getSampleCount(), AoAProfiler.isEnabled() ? "running" : "stopped",
+                RecipeIndex.getHits(), RecipeIndex.getMisses())), false);
+        for (AoAProfiler.Entry entry : entries) {
+            BlockPos pos = entry.getPos();
+            String where = pos != null ? String.format(" at [%d, %d, %d]", pos.getX(), pos.getY(), pos.getZ()) : "";
+            source.sendFeedback(new LiteralText(String.format(
+                    "%s %s%s: %.1fms total, %.1fus avg, %.1fus max over %d ticks, %d transferred, %d lookups",
+                    entry.section.name().toLowerCase(), entry.name, where, entry.getTotalNanos() / 1e6,
+                    entry.getAverageNanos() / 1e3, entry.getMaxNanos() / 1e3, entry.getSamples(),
+                    entry.getTransfers(), entry.getLookups())), false);
+        }
+        return entries.size();
+    }
+
+}
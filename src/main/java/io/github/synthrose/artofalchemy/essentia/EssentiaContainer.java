@@ -7,7 +7,6 @@ import net.minecraft.nbt.StringTag;
 import net.minecraft.util.Identifier;
 
 import java.util.HashSet;
-import java.util.Map.Entry;
 import java.util.Set;
 
 public class EssentiaContainer {
@@ -60,6 +59,19 @@ public class EssentiaContainer {
 		}
 	}
 
+	// Detached copy with the same contents and settings
+	public EssentiaContainer copy() {
+		EssentiaContainer copy = new EssentiaContainer();
+		copy.contents.putAll(contents);
+		copy.whitelist.addAll(whitelist);
+		copy.capacity = capacity;
+		copy.input = input;
+		copy.output = output;
+		copy.infinite = infinite;
+		copy.whitelistEnabled = whitelistEnabled;
+		return copy;
+	}
+
 	public static EssentiaContainer of(ItemStack item) {
 		EssentiaContainer container;
 		if (item.hasTag() && item.getTag().contains("contents")) {
@@ -181,14 +193,7 @@ public class EssentiaContainer {
 	// Clears any essentia in violation of the whitelist; returns true if any essentia was deleted
 	public boolean enforceWhitelist() {
 		if (whitelistEnabled) {
-			boolean removed = false;
-			for (Essentia key : contents.keySet()) {
-				if (!whitelist.contains(key)) {
-					contents.remove(key);
-					removed = true;
-				}
-			}
-			return removed;
+			return contents.keySet().removeIf((key) -> !whitelist.contains(key));
 		} else {
 			return false;
 		}
@@ -196,7 +201,7 @@ public class EssentiaContainer {
 	
 	public int getCount(Essentia essentia) {
 		if (essentia != null) {
-			return contents.getOrDefault(essentia, 0);
+			return contents.getCount(essentia);
 		} else {
 			return 0;
 		}
@@ -207,12 +212,7 @@ public class EssentiaContainer {
 	}
 	
 	public boolean isEmpty() {
-		for (int amount : contents.values()) {
-			if (amount != 0) {
-				return false;
-			}
-		}
-		return true;
+		return contents.isEmpty();
 	}
 	
 	public boolean isFull() {
@@ -241,12 +241,8 @@ public class EssentiaContainer {
 	}
 	
 	public boolean canAcceptIgnoreIO(EssentiaStack query) {
-		if (whitelistEnabled) {
-			for (Essentia key : query.keySet()) {
-				if (query.getOrDefault(key, 0) != 0 && !whitelisted(key)) {
-					return false;
-				}
-			}
+		if (whitelistEnabled && !query.containsOnly(whitelist)) {
+			return false;
 		}
 		if (capacity == null) {
 			return true;
@@ -264,12 +260,8 @@ public class EssentiaContainer {
 	}
 	
 	public boolean canProvideIgnoreIO(EssentiaStack query) {
-		if (whitelistEnabled) {
-			for (Essentia key : query.keySet()) {
-				if (query.getOrDefault(key, 0) != 0 && !whitelisted(key)) {
-					return false;
-				}
-			}
+		if (whitelistEnabled && !query.containsOnly(whitelist)) {
+			return false;
 		}
 		if (infinite) {
 			return true;
@@ -336,32 +328,40 @@ public class EssentiaContainer {
 	
 	// Push as much as possible of a stack to another container, returning the essentia transferred
 	public EssentiaStack pushStack(EssentiaContainer other, EssentiaStack stack, boolean force) {
-		if (!force && (!this.output || !other.input)) {
-			return new EssentiaStack();
-		} else {
-			EssentiaStack transferred = new EssentiaStack();
-			for (Entry<Essentia, Integer> entry : stack.entrySet()) {
-				Essentia key = entry.getKey();
-				int value = entry.getValue();
-				if (this.whitelisted(key) && other.whitelisted(key)) {
-					int transferAmt = value;
-					if (other.capacity != null) {
-						transferAmt = Math.min(transferAmt, other.getCapacity() - other.getCount());
-					}
-					if (!this.infinite) {
-						transferAmt = Math.min(transferAmt, this.getCount(key));
-						this.contents.subtract(key, transferAmt);
-					}
-					if (!other.infinite) {
-						other.contents.add(key, transferAmt);
-					}
-					transferred.put(key, transferAmt);
-				}
-			}
-			return transferred;
+		EssentiaStack transferred = new EssentiaStack();
+		pushStack(other, stack, force, transferred);
+		return transferred;
+	}
+
+	// Push as much as possible of a stack to another container, adding the essentia transferred to the given buffer
+	// (which may be null) and returning the total amount transferred
+	public int pushStack(EssentiaContainer other, EssentiaStack stack, boolean force, EssentiaStack transferred) {
+		return pushScaled(other, stack, 1.0f, force, transferred);
+	}
+
+	// Push up to the given amount of a single essentia type to another container, ignoring IO and returning the amount transferred
+	public int pushEssentia(EssentiaContainer other, Essentia essentia, int amount) {
+		if (!this.whitelisted(essentia) || !other.whitelisted(essentia)) {
+			return 0;
+		}
+		if (other.capacity != null) {
+			amount = Math.min(amount, other.getCapacity() - other.getCount());
+		}
+		if (!this.infinite) {
+			amount = Math.min(amount, this.getCount(essentia));
 		}
+		if (amount <= 0) {
+			return 0;
+		}
+		if (!this.infinite) {
+			this.contents.subtract(essentia, amount);
+		}
+		if (!other.infinite) {
+			other.contents.add(essentia, amount);
+		}
+		return amount;
 	}
-	
+
 	// Pull as much as possible of a stack from another container, returning the essentia transferred
 	public EssentiaStack pullStack(EssentiaContainer other, EssentiaStack stack, boolean force) {
 		return other.pushStack(this, stack, force);
@@ -369,18 +369,74 @@ public class EssentiaContainer {
 	
 	// Push as much as possible of this container's contents to another, returning the essentia transferred
 	public EssentiaStack pushContents(EssentiaContainer other, boolean force) {
+		EssentiaStack transferred = new EssentiaStack();
+		pushContents(other, force, transferred);
+		return transferred;
+	}
+
+	// Push as much as possible of this container's contents to another, adding the essentia transferred to the given
+	// buffer (which may be null) and returning the total amount transferred
+	public int pushContents(EssentiaContainer other, boolean force, EssentiaStack transferred) {
 		if (other.hasUnlimitedCapacity() || other.getFreeCapacity() >= this.getCount()) {
-			return pushStack(other, this.contents, force);
+			return pushScaled(other, this.contents, 1.0f, force, transferred);
 		} else {
-			return pushStack(other, EssentiaStack.multiplyCeil(this.contents, (float) other.getFreeCapacity() / this.getCount()) , force);
+			return pushScaled(other, this.contents, (float) other.getFreeCapacity() / this.getCount(), force, transferred);
 		}
 	}
-	
+
 	// Pull as much as possible of another container's contents, returning the essentia transferred
 	public EssentiaStack pullContents(EssentiaContainer other, boolean force) {
 		return other.pushContents(this, force);
 	}
-	
+
+	// Pull as much as possible of another container's contents, adding the essentia transferred to the given buffer
+	// (which may be null) and returning the total amount transferred
+	public int pullContents(EssentiaContainer other, boolean force, EssentiaStack transferred) {
+		return other.pushContents(this, force, transferred);
+	}
+
+	// Shared transfer loop: each essentia amount in the stack is scaled (rounding up) and then clamped to what this
+	// container holds and the other container has room for. Bails out before touching anything if nothing can move.
+	private int pushScaled(EssentiaContainer other, EssentiaStack stack, float scale, boolean force, EssentiaStack transferred) {
+		if (!force && (!this.output || !other.input)) {
+			return 0;
+		}
+		if ((!this.infinite && this.isEmpty()) || other.isFull() || stack.isEmpty()) {
+			return 0;
+		}
+		int total = 0;
+		for (int id = 0; id < stack.rawLength(); id++) {
+			int value = stack.getRawCount(id);
+			if (value == 0) {
+				continue;
+			}
+			Essentia key = EssentiaStack.byRawId(id);
+			if (this.whitelisted(key) && other.whitelisted(key)) {
+				int transferAmt = scale == 1.0f ? value : (int) Math.ceil(value * scale);
+				if (other.capacity != null) {
+					transferAmt = Math.min(transferAmt, other.getCapacity() - other.getCount());
+				}
+				if (!this.infinite) {
+					transferAmt = Math.min(transferAmt, this.getCount(key));
+				}
+				if (transferAmt <= 0) {
+					continue;
+				}
+				if (!this.infinite) {
+					this.contents.subtract(key, transferAmt);
+				}
+				if (!other.infinite) {
+					other.contents.add(key, transferAmt);
+				}
+				if (transferred != null) {
+					transferred.add(key, transferAmt);
+				}
+				total += transferAmt;
+			}
+		}
+		return total;
+	}
+
 	public EssentiaStack pushStack(EssentiaContainer other, EssentiaStack stack) {
 		return pushStack(other, stack, false);
 	}
@@ -397,21 +453,29 @@ public class EssentiaContainer {
 		return pullContents(other, false);
 	}
 
-	public void mixPushContents(EssentiaContainer other) {
-		if (this.output == false || other.input == false) {
-			return;
-		}
-		EssentiaContainer mixed = new EssentiaContainer().setUnlimitedCapacity();
-		this.pushContents(mixed, true);
-		other.pushContents(mixed, true);
-		mixed.pushContents(other, true);
-		mixed.pushContents(this, true);
-	}
-
 	public int getColor() {
 		return getContents().getColor();
 	}
 	
+	// Only what clients show: the contents, the capacity and whether the container is infinite
+	public CompoundTag toClientTag() {
+		CompoundTag tag = new CompoundTag();
+		tag.putIntArray("contents", contents.toRawArray());
+		tag.putInt("capacity", capacity == null ? -1 : capacity);
+		if (infinite) {
+			tag.putBoolean("infinite", true);
+		}
+		return tag;
+	}
+
+	// Updates this container in place from toClientTag(), keeping its other settings
+	public void fromClientTag(CompoundTag tag) {
+		setContents(EssentiaStack.fromRawArray(tag.getIntArray("contents")));
+		int capacity = tag.getInt("capacity");
+		this.capacity = capacity < 0 ? null : capacity;
+		infinite = tag.getBoolean("infinite");
+	}
+
 	public CompoundTag toTag() {
 		CompoundTag tag = new CompoundTag();
 		tag.put("essentia", getContents().toTag());
@@ -2,170 +2,454 @@ package io.github.synthrose.artofalchemy.essentia;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
-import io.github.synthrose.artofalchemy.util.AoAHelper;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.util.Identifier;
-import net.minecraft.util.math.Vec3d;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+
+// Amounts are stored in an int array indexed by the essentia's raw id in RegistryEssentia, with a cached total.
+// The Map interface is kept as a compatibility view; hot paths should prefer the primitive methods.
+public class EssentiaStack extends AbstractMap<Essentia, Integer> {
+
+	private static final int[] EMPTY = new int[0];
+	private static final int NO_COLOR = -1;
+
+	private int[] amounts = EMPTY;
+	private int total = 0;
+	// Blended color of the contents, or NO_COLOR until it's computed again after a change
+	private int color = NO_COLOR;
 
-@SuppressWarnings("serial")
-public class EssentiaStack extends HashMap<Essentia, Integer> {
-	
 	public EssentiaStack() {
 		super();
 	}
-	
+
+	public EssentiaStack(EssentiaStack other) {
+		this.amounts = other.amounts.clone();
+		this.total = other.total;
+		this.color = other.color;
+	}
+
 	public EssentiaStack(JsonObject obj) {
 		obj.entrySet().forEach((entry) -> {
 			Essentia essentia = RegistryEssentia.INSTANCE.get(new Identifier(entry.getKey()));
 			if (essentia != null) {
-				put(essentia, entry.getValue().getAsInt());
+				set(essentia, entry.getValue().getAsInt());
 			} else {
 				throw new JsonSyntaxException("Unknown essentia '" + entry.getKey() + "'");
 			}
 		});
 	}
-	
+
 	public EssentiaStack(CompoundTag tag) {
 		if (tag != null) {
 			tag.getKeys().forEach((key) -> {
 				Essentia essentia = RegistryEssentia.INSTANCE.get(new Identifier(key));
 				if (essentia != null) {
-					put(essentia, tag.getInt(key));
+					set(essentia, tag.getInt(key));
 				}
 			});
 		}
 	}
 
+	static Essentia byRawId(int rawId) {
+		return RegistryEssentia.INSTANCE.get(rawId);
+	}
+
+	// Raw-id accessors for allocation-free iteration within this package.
+	int rawLength() {
+		return amounts.length;
+	}
+
+	int getRawCount(int rawId) {
+		return rawId < amounts.length ? amounts[rawId] : 0;
+	}
+
+	public EssentiaStack copy() {
+		return new EssentiaStack(this);
+	}
+
 	public int getCount() {
-		int sum = 0;
-		for (int amount : values()) {
-			sum += amount;
+		return total;
+	}
+
+	public int getCount(Essentia essentia) {
+		if (essentia == null) {
+			return 0;
+		}
+		int id = RegistryEssentia.INSTANCE.getRawId(essentia);
+		return (id >= 0 && id < amounts.length) ? amounts[id] : 0;
+	}
+
+	public void set(Essentia essentia, int amount) {
+		int id = RegistryEssentia.INSTANCE.getRawId(essentia);
+		if (id < 0) {
+			return;
+		}
+		if (id >= amounts.length) {
+			if (amount == 0) {
+				return;
+			}
+			amounts = Arrays.copyOf(amounts, id + 1);
 		}
-		return sum;
+		total += amount - amounts[id];
+		amounts[id] = amount;
+		color = NO_COLOR;
 	}
-	
+
+	public boolean isEmpty() {
+		for (int amount : amounts) {
+			if (amount != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Returns true if every essentia with a nonzero amount in this stack is in the given set.
+	public boolean containsOnly(Set<Essentia> allowed) {
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != 0 && !allowed.contains(byRawId(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Amounts indexed by raw id, without trailing zeros. Compact, but only meaningful on a side with the same essentia
+	// registry, like the client syncs in EssentiaSync.
+	public int[] toRawArray() {
+		int length = amounts.length;
+		while (length > 0 && amounts[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.copyOf(amounts, length);
+	}
+
+	public static EssentiaStack fromRawArray(int[] raw) {
+		EssentiaStack stack = new EssentiaStack();
+		stack.amounts = raw.clone();
+		for (int amount : raw) {
+			stack.total += amount;
+		}
+		return stack;
+	}
+
 	public CompoundTag toTag() {
 		CompoundTag tag = new CompoundTag();
-		for (Essentia essentia : keySet()) {
-			tag.putInt(RegistryEssentia.INSTANCE.getId(essentia).toString(), get(essentia));
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != 0) {
+				tag.putInt(RegistryEssentia.INSTANCE.getId(byRawId(i)).toString(), amounts[i]);
+			}
 		}
 		return tag;
 	}
-	
+
 	public List<Essentia> sortedList() {
 		List<Essentia> list = new ArrayList<>();
-		for (Essentia key : keySet()) {
-			if (get(key) > 0) {
-				list.add(key);
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] > 0) {
+				list.add(byRawId(i));
 			}
 		}
-		list.sort((item1, item2) -> get(item2) - get(item1));
+		list.sort((item1, item2) -> getCount(item2) - getCount(item1));
 		return list;
 	}
-	
+
 	// Mutating scalar multiplication for a single essentia type. Can go negative - try not to break things.
 	public void multiply(Essentia essentia, int scalar) {
-		this.put(essentia, this.getOrDefault(essentia, 0) * scalar);
+		set(essentia, getCount(essentia) * scalar);
 	}
 	public void multiply(Essentia essentia, double scalar) {
-		this.put(essentia, (int) (this.getOrDefault(essentia, 0) * scalar));
+		set(essentia, (int) (getCount(essentia) * scalar));
 	}
-	
+
 	// Mutating scalar multiplication. Can go negative - try not to break things.
 	public void multiply(int scalar) {
-		this.forEach((essentia, __) -> multiply(essentia, scalar));
+		color = NO_COLOR;
+		total = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] *= scalar;
+			total += amounts[i];
+		}
 	}
 	public void multiply(double scalar) {
-		this.forEach((essentia, __) -> multiply(essentia, scalar));
+		color = NO_COLOR;
+		total = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = (int) (amounts[i] * scalar);
+			total += amounts[i];
+		}
 	}
-	
+
 	// Non-mutating scalar multiplication. Can go negative - try not to break things.
 	public static EssentiaStack multiply(EssentiaStack inStack, int scalar) {
-		EssentiaStack outStack = new EssentiaStack();
-		inStack.forEach((essentia, amount) -> outStack.put(essentia, amount * scalar));
+		EssentiaStack outStack = inStack.copy();
+		outStack.multiply(scalar);
 		return outStack;
 	}
 
 	// Non-mutating scalar multiplication. Can go negative - try not to break things.
 	public static EssentiaStack multiply(EssentiaStack inStack, double scalar) {
-		EssentiaStack outStack = new EssentiaStack();
-		inStack.forEach((essentia, amount) -> outStack.put(essentia, (int) (amount * scalar)));
+		EssentiaStack outStack = inStack.copy();
+		outStack.multiply(scalar);
 		return outStack;
 	}
 
 	// Non-mutating scalar multiplication. Can go negative - try not to break things.
 	public static EssentiaStack multiplyCeil(EssentiaStack inStack, double scalar) {
-		EssentiaStack outStack = new EssentiaStack();
-		inStack.forEach((essentia, amount) -> outStack.put(essentia, (int) Math.ceil(amount * scalar)));
+		EssentiaStack outStack = inStack.copy();
+		outStack.total = 0;
+		outStack.color = NO_COLOR;
+		for (int i = 0; i < outStack.amounts.length; i++) {
+			outStack.amounts[i] = (int) Math.ceil(outStack.amounts[i] * scalar);
+			outStack.total += outStack.amounts[i];
+		}
 		return outStack;
 	}
-	
+
 	// Mutating addition for a single essentia type.
 	public void add(Essentia essentia, int amount) {
-		this.put(essentia, this.getOrDefault(essentia, 0) + amount);
+		set(essentia, getCount(essentia) + amount);
 	}
-	
+
 	// Mutating addition.
 	public void add(EssentiaStack other) {
-		other.forEach(this::add);
+		if (other.amounts.length > amounts.length) {
+			amounts = Arrays.copyOf(amounts, other.amounts.length);
+		}
+		for (int i = 0; i < other.amounts.length; i++) {
+			amounts[i] += other.amounts[i];
+		}
+		total += other.total;
+		color = NO_COLOR;
 	}
-	
+
 	// Non-mutating addition.
 	public static EssentiaStack add(EssentiaStack stack1, EssentiaStack stack2) {
-		EssentiaStack outStack = new EssentiaStack();
-		Set<Essentia> union = new HashSet<>();
-		union.addAll(stack1.keySet());
-		union.addAll(stack2.keySet());
-		union.forEach((essentia) -> outStack.put(essentia, stack1.getOrDefault(essentia, 0) + stack2.getOrDefault(essentia, 0)));
+		EssentiaStack outStack = stack1.copy();
+		outStack.add(stack2);
 		return outStack;
 	}
-	
+
 	// Mutating subtraction for a single essentia type.
 	public void subtract(Essentia essentia, int amount) {
-		this.put(essentia, Math.max(0, this.getOrDefault(essentia, 0) - amount));
+		set(essentia, Math.max(0, getCount(essentia) - amount));
 	}
-	
+
 	// Mutating subtraction.
 	public void subtract(EssentiaStack other) {
-		other.forEach(this::subtract);
+		int length = Math.min(amounts.length, other.amounts.length);
+		for (int i = 0; i < length; i++) {
+			if (other.amounts[i] != 0) {
+				int amount = Math.max(0, amounts[i] - other.amounts[i]);
+				total += amount - amounts[i];
+				amounts[i] = amount;
+			}
+		}
+		color = NO_COLOR;
 	}
-	
+
 	// Non-mutating subtraction.
 	public static EssentiaStack subtract(EssentiaStack stack1, EssentiaStack stack2) {
-		EssentiaStack outStack = new EssentiaStack();
-		Set<Essentia> union = stack1.keySet();
-		union.addAll(stack2.keySet());
-		union.forEach((essentia) -> {
-			int amount = Math.min(0, stack1.getOrDefault(essentia, 0) - stack2.getOrDefault(essentia, 0));
-			outStack.put(essentia, amount);
-		});
+		EssentiaStack outStack = stack1.copy();
+		outStack.subtract(stack2);
 		return outStack;
 	}
-	
+
 	// Returns true if this stack contains at least as much essentia of all types as the argument.
 	public boolean contains(EssentiaStack other) {
-		Set<Essentia> union = new HashSet<>();
-		union.addAll(this.keySet());
-		union.addAll(other.keySet());
-		for (Essentia essentia : union) {
-			if (this.getOrDefault(essentia, 0) < other.getOrDefault(essentia, 0)) {
+		for (int i = 0; i < other.amounts.length; i++) {
+			int amount = i < amounts.length ? amounts[i] : 0;
+			if (amount < other.amounts[i]) {
+				return false;
+			}
+		}
+		for (int i = other.amounts.length; i < amounts.length; i++) {
+			if (amounts[i] < 0) {
 				return false;
 			}
 		}
 		return true;
 	}
 
+	// Returns how many whole multiples of the argument this stack contains, or Integer.MAX_VALUE if the argument is empty.
+	public int countMultiples(EssentiaStack other) {
+		int multiples = Integer.MAX_VALUE;
+		for (int i = 0; i < other.amounts.length; i++) {
+			if (other.amounts[i] > 0) {
+				int amount = i < amounts.length ? amounts[i] : 0;
+				multiples = Math.min(multiples, amount / other.amounts[i]);
+			}
+		}
+		return multiples;
+	}
+
+	// Average of the essentia colors weighted by amount, cached until the contents change
 	public int getColor() {
-		Vec3d colorSum = new Vec3d(0, 0, 0);
-		double count = getCount();
-		for (Essentia essentia : keySet()) {
-			Vec3d color = AoAHelper.decimalColor(essentia.getColor());
-			color = color.multiply(get(essentia) / count);
-			colorSum = colorSum.add(color);
+		if (color == NO_COLOR) {
+			color = blendColor();
 		}
-		return AoAHelper.combineColor(colorSum);
+		return color;
 	}
-	
+
+	private int blendColor() {
+		if (total == 0) {
+			return 0;
+		}
+		long r = 0;
+		long g = 0;
+		long b = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			int amount = amounts[i];
+			if (amount != 0) {
+				int essentiaColor = byRawId(i).getColor();
+				r += (long) ((essentiaColor >> 16) & 0xFF) * amount;
+				g += (long) ((essentiaColor >> 8) & 0xFF) * amount;
+				b += (long) (essentiaColor & 0xFF) * amount;
+			}
+		}
+		return (channel(r / total) << 16) | (channel(g / total) << 8) | channel(b / total);
+	}
+
+	private static int channel(long value) {
+		return (int) Math.max(0, Math.min(0xFF, value));
+	}
+
+	// Map compatibility view. Essentia with an amount of zero are treated as absent.
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (int amount : amounts) {
+			if (amount != 0) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Essentia && getCount((Essentia) key) != 0;
+	}
+
+	@Override
+	public Integer get(Object key) {
+		if (key instanceof Essentia) {
+			int amount = getCount((Essentia) key);
+			return amount != 0 ? amount : null;
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public Integer getOrDefault(Object key, Integer defaultValue) {
+		Integer amount = get(key);
+		return amount != null ? amount : defaultValue;
+	}
+
+	@Override
+	public Integer put(Essentia key, Integer value) {
+		Integer previous = get(key);
+		set(key, value == null ? 0 : value);
+		return previous;
+	}
+
+	@Override
+	public Integer remove(Object key) {
+		Integer previous = get(key);
+		if (previous != null) {
+			set((Essentia) key, 0);
+		}
+		return previous;
+	}
+
+	@Override
+	public void putAll(Map<? extends Essentia, ? extends Integer> map) {
+		if (map instanceof EssentiaStack) {
+			EssentiaStack other = (EssentiaStack) map;
+			if (other.amounts.length > amounts.length) {
+				amounts = Arrays.copyOf(amounts, other.amounts.length);
+			}
+			for (int i = 0; i < other.amounts.length; i++) {
+				if (other.amounts[i] != 0) {
+					total += other.amounts[i] - amounts[i];
+					amounts[i] = other.amounts[i];
+				}
+			}
+			color = NO_COLOR;
+		} else {
+			super.putAll(map);
+		}
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(amounts, 0);
+		total = 0;
+		color = NO_COLOR;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Essentia, ? super Integer> action) {
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != 0) {
+				action.accept(byRawId(i), amounts[i]);
+			}
+		}
+	}
+
+	@Override
+	public Set<Entry<Essentia, Integer>> entrySet() {
+		return new AbstractSet<Entry<Essentia, Integer>>() {
+			@Override
+			public Iterator<Entry<Essentia, Integer>> iterator() {
+				return new Iterator<Entry<Essentia, Integer>>() {
+					private int next = advance(0);
+					private int last = -1;
+
+					private int advance(int from) {
+						while (from < amounts.length && amounts[from] == 0) {
+							from++;
+						}
+						return from;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < amounts.length;
+					}
+
+					@Override
+					public Entry<Essentia, Integer> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						last = next;
+						next = advance(next + 1);
+						return new SimpleImmutableEntry<>(byRawId(last), amounts[last]);
+					}
+
+					@Override
+					public void remove() {
+						if (last < 0) {
+							throw new IllegalStateException();
+						}
+						total -= amounts[last];
+						amounts[last] = 0;
+						color = NO_COLOR;
+						last = -1;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return EssentiaStack.this.size();
+			}
+		};
+	}
+
 }
@@ -6,10 +6,12 @@ import io.github.cottonmc.cotton.gui.widget.WBar.Direction;
 import io.github.cottonmc.cotton.gui.widget.data.HorizontalAlignment;
 import io.github.synthrose.artofalchemy.ArtOfAlchemy;
 import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.network.EssentiaSubscriptions;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
 import io.github.synthrose.artofalchemy.gui.widget.WEssentiaPanel;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.resource.language.I18n;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.screen.ScreenHandlerContext;
 import net.minecraft.text.TranslatableText;
@@ -26,6 +28,7 @@ public class HandlerDissolver extends SyncedGuiDescription {
 		super(AoAHandlers.DISSOLVER, syncId, playerInventory, getBlockInventory(ctx), getBlockPropertyDelegate(ctx));
 		
 		pos = ctx.run((world, pos) -> pos, null);
+		ctx.run((world, pos) -> EssentiaSubscriptions.subscribe(world, pos, playerInventory.player));
 		
 		WGridPanel root = new WGridPanel(1);
 		setRootPanel(root);
@@ -91,4 +94,10 @@ public class HandlerDissolver extends SyncedGuiDescription {
 		}, new EssentiaContainer());
 	}
 
+	@Override
+	public void close(PlayerEntity player) {
+		super.close(player);
+		EssentiaSubscriptions.unsubscribe(player);
+	}
+
 }
@@ -8,10 +8,12 @@ import io.github.synthrose.artofalchemy.ArtOfAlchemy;
 import io.github.synthrose.artofalchemy.blockentity.BlockEntitySynthesizer;
 import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
 import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
+import io.github.synthrose.artofalchemy.network.EssentiaSubscriptions;
 import io.github.synthrose.artofalchemy.transport.HasEssentia;
 import io.github.synthrose.artofalchemy.gui.widget.WEssentiaPanel;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.resource.language.I18n;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.screen.ScreenHandlerContext;
 import net.minecraft.text.TranslatableText;
@@ -28,6 +30,7 @@ public class HandlerSynthesizer extends SyncedGuiDescription {
 		super(AoAHandlers.SYNTHESIZER, syncId, playerInventory, getBlockInventory(ctx), getBlockPropertyDelegate(ctx));
 		
 		pos = ctx.run((world, pos) -> pos, null);
+		ctx.run((world, pos) -> EssentiaSubscriptions.subscribe(world, pos, playerInventory.player));
 		
 		WGridPanel root = new WGridPanel(1);
 		setRootPanel(root);
@@ -119,4 +122,10 @@ public class HandlerSynthesizer extends SyncedGuiDescription {
 		}, new EssentiaStack());
 	}
 
+	@Override
+	public void close(PlayerEntity player) {
+		super.close(player);
+		EssentiaSubscriptions.unsubscribe(player);
+	}
+
 }
@@ -81,12 +81,12 @@ public class ItemEssentiaVessel extends Item {
 			HasEssentia target = (HasEssentia) be;
 			for (int i = 0; i < target.getNumContainers() && transferred == 0; i++) {
 				EssentiaContainer other = target.getContainer(i);
-				int pushed = container.pushContents(other).getCount();
+				int pushed = container.pushContents(other, false, null);
 				transferred -= pushed;
 			}
 			for (int i = 0; i < target.getNumContainers() && transferred == 0; i++) {
 				EssentiaContainer other = target.getContainer(i);
-				int pulled = container.pullContents(other, container.isInput()).getCount();
+				int pulled = container.pullContents(other, container.isInput(), null);
 				transferred += pulled;
 			}
 			BlockPos pos = be.getPos();
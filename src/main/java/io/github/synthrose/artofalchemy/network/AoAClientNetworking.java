@@ -11,46 +11,59 @@ import net.fabricmc.fabric.api.network.ClientSidePacketRegistry;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.util.Hand;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.Map;
 
 @Environment(EnvType.CLIENT)
 public class AoAClientNetworking {
 
+	// Client half of the delta sync state. Packets are applied on the client thread, in the order they arrive along
+	// with the vanilla packets that change or leave the world, so the state can be dropped as soon as the world changes.
+	private static final Map<EssentiaSync.Key, SyncedEssentia> essentia = EssentiaSync.lru();
+	private static World syncedWorld = null;
+
 	@Environment(EnvType.CLIENT)
 	public static void initializeClientNetworking() {
 		ClientSidePacketRegistry.INSTANCE.register(AoANetworking.ESSENTIA_PACKET,
 			(ctx, data) -> {
-				int essentiaId = data.readInt();
-				CompoundTag tag = data.readCompoundTag();
-				BlockPos pos = data.readBlockPos();
+				// The buffer is released once this handler returns
+				PacketByteBuf packet = new PacketByteBuf(data.copy());
 				ctx.getTaskQueue().execute(() -> {
-					EssentiaContainer container = new EssentiaContainer(tag);
-					Screen screen = MinecraftClient.getInstance().currentScreen;
+					MinecraftClient client = MinecraftClient.getInstance();
+					// Keys don't include the dimension, and the server starts over on a new world or connection
+					if (client.world != syncedWorld) {
+						essentia.clear();
+						syncedWorld = client.world;
+					}
+					int essentiaId = packet.readVarInt();
+					BlockPos pos = packet.readBlockPos();
+					int flags = packet.readByte();
+					EssentiaSync.Key key = new EssentiaSync.Key(pos, essentiaId);
+					SyncedEssentia synced = essentia.remove(key);
+					if (synced == null || (flags & EssentiaSync.FULL) != 0) {
+						synced = new SyncedEssentia();
+					}
+					essentia.put(key, synced);
+					EssentiaSync.applyTo(packet, flags, synced.container, synced.required);
+					packet.release();
+					synced.hasRequirements |= (flags & EssentiaSync.REQUIRED) != 0;
+					Screen screen = client.currentScreen;
 					if (screen instanceof EssentiaScreen) {
-						((EssentiaScreen) screen).updateEssentia(essentiaId, container, pos);
+						// Screens may hold on to what they are given, so they get copies of the synced state
+						if (synced.hasRequirements) {
+							((EssentiaScreen) screen).updateEssentia(essentiaId, synced.container.copy(),
+									synced.required.copy(), pos);
+						} else {
+							((EssentiaScreen) screen).updateEssentia(essentiaId, synced.container.copy(), pos);
+						}
 					}
 				});
 			});
-		
-		ClientSidePacketRegistry.INSTANCE.register(AoANetworking.ESSENTIA_PACKET_REQ,
-				(ctx, data) -> {
-					int essentiaId = data.readInt();
-					CompoundTag essentiaTag = data.readCompoundTag();
-					CompoundTag requiredTag = data.readCompoundTag();
-					BlockPos pos = data.readBlockPos();
-					ctx.getTaskQueue().execute(() -> {
-						EssentiaContainer container = new EssentiaContainer(essentiaTag);
-						EssentiaStack required = new EssentiaStack(requiredTag);
-						Screen screen = MinecraftClient.getInstance().currentScreen;
-						if (screen instanceof EssentiaScreen) {
-							((EssentiaScreen) screen).updateEssentia(essentiaId, container, required, pos);
-						}
-					});
-				});
 
 		ClientSidePacketRegistry.INSTANCE.register(AoANetworking.JOURNAL_REFRESH_PACKET,
 				(ctx, data) -> {
@@ -64,6 +77,12 @@ public class AoAClientNetworking {
 				});
 	}
 
+	private static class SyncedEssentia {
+		private final EssentiaContainer container = new EssentiaContainer();
+		private final EssentiaStack required = new EssentiaStack();
+		private boolean hasRequirements = false;
+	}
+
 	public static void sendJournalSelectPacket(Identifier id, Hand hand) {
 		PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
 		data.writeIdentifier(id);
@@ -6,7 +6,6 @@ import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
 import io.github.synthrose.artofalchemy.item.ItemJournal;
 import io.netty.buffer.Unpooled;
 import net.fabricmc.fabric.api.network.ServerSidePacketRegistry;
-import net.fabricmc.fabric.api.server.PlayerStream;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketByteBuf;
@@ -15,12 +14,11 @@ import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
-import java.util.stream.Stream;
+import java.util.Set;
 
 public class AoANetworking {
 
 	public static final Identifier ESSENTIA_PACKET = ArtOfAlchemy.id("update_essentia");
-	public static final Identifier ESSENTIA_PACKET_REQ = ArtOfAlchemy.id("update_essentia_req");
 	public static final Identifier JOURNAL_SELECT_PACKET = ArtOfAlchemy.id("journal_select");
 	public static final Identifier JOURNAL_REFRESH_PACKET = ArtOfAlchemy.id("journal_refresh");
 
@@ -41,27 +39,30 @@ public class AoANetworking {
 
 	
 	public static void sendEssentiaPacket(World world, BlockPos pos, int essentiaId, EssentiaContainer container) {
-		Stream<PlayerEntity> players = PlayerStream.watching(world, pos);
-		
-		PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
-		data.writeInt(essentiaId);
-		data.writeCompoundTag(container.toTag());
-		data.writeBlockPos(pos);
-		
-		players.forEach(player -> ServerSidePacketRegistry.INSTANCE.sendToPlayer(player, ESSENTIA_PACKET, data));
+		sendEssentiaPacket(world, pos, essentiaId, container, null);
 	}
 	
 	public static void sendEssentiaPacketWithRequirements(World world, BlockPos pos, int essentiaId,
 														  EssentiaContainer container, EssentiaStack required) {
-		Stream<PlayerEntity> players = PlayerStream.watching(world, pos);
-		
-		PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
-		data.writeInt(essentiaId);
-		data.writeCompoundTag(container.toTag());
-		data.writeCompoundTag(required.toTag());
-		data.writeBlockPos(pos);
+		sendEssentiaPacket(world, pos, essentiaId, container, required);
+	}
+
+	// Only players with the block's GUI open receive essentia packets, and each of them only gets what changed since
+	// the last packet they were sent, see EssentiaSync
+	private static void sendEssentiaPacket(World world, BlockPos pos, int essentiaId, EssentiaContainer container,
+										   EssentiaStack required) {
+		Set<PlayerEntity> players = EssentiaSubscriptions.getSubscribers(world, pos);
 		
-		players.forEach(player -> ServerSidePacketRegistry.INSTANCE.sendToPlayer(player, ESSENTIA_PACKET_REQ, data));
+		players.forEach(player -> {
+			// Players that left this tick are only unsubscribed at the end of it
+			if (player.removed) {
+				return;
+			}
+			PacketByteBuf data = EssentiaSync.get(player).encode(pos, essentiaId, container, required);
+			if (data != null) {
+				ServerSidePacketRegistry.INSTANCE.sendToPlayer(player, ESSENTIA_PACKET, data);
+			}
+		});
 	}
 
 	public static void sendJournalRefreshPacket(PlayerEntity player, ItemStack journal) {
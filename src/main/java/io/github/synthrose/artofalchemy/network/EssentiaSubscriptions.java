@@ -0,0 +1,89 @@
+package io.github.synthrose.artofalchemy.network;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.*;
+
+// Tracks which players have an essentia GUI open for which block, so that essentia packets are only sent to them.
+// Handlers subscribe their player when they are opened on the server and unsubscribe it in close(). Players that
+// disconnect or change dimension without their handler being closed are dropped by prune(), every server tick.
+public class EssentiaSubscriptions {
+
+	private static final Map<World, Long2ObjectOpenHashMap<Set<PlayerEntity>>> SUBSCRIBERS = new WeakHashMap<>();
+	private static final Map<PlayerEntity, Subscription> BY_PLAYER = new WeakHashMap<>();
+
+	// A player only has one screen open at a time, so this replaces any previous subscription
+	public static void subscribe(World world, BlockPos pos, PlayerEntity player) {
+		if (world.isClient()) {
+			return;
+		}
+		unsubscribe(player);
+		long key = pos.asLong();
+		SUBSCRIBERS.computeIfAbsent(world, (__) -> new Long2ObjectOpenHashMap<>())
+				.computeIfAbsent(key, (__) -> new HashSet<>()).add(player);
+		BY_PLAYER.put(player, new Subscription(world, key));
+	}
+
+	public static void unsubscribe(PlayerEntity player) {
+		Subscription subscription = BY_PLAYER.remove(player);
+		if (subscription == null) {
+			return;
+		}
+		Long2ObjectOpenHashMap<Set<PlayerEntity>> byPos = SUBSCRIBERS.get(subscription.world);
+		if (byPos != null) {
+			Set<PlayerEntity> players = byPos.get(subscription.pos);
+			if (players != null) {
+				players.remove(player);
+				if (players.isEmpty()) {
+					byPos.remove(subscription.pos);
+				}
+			}
+		}
+	}
+
+	public static Set<PlayerEntity> getSubscribers(World world, BlockPos pos) {
+		Long2ObjectOpenHashMap<Set<PlayerEntity>> byPos = SUBSCRIBERS.get(world);
+		if (byPos == null) {
+			return Collections.emptySet();
+		}
+		Set<PlayerEntity> players = byPos.get(pos.asLong());
+		if (players == null) {
+			return Collections.emptySet();
+		}
+		return players;
+	}
+
+	public static void prune() {
+		if (BY_PLAYER.isEmpty()) {
+			return;
+		}
+		List<PlayerEntity> gone = new ArrayList<>();
+		BY_PLAYER.forEach((player, subscription) -> {
+			if (player.removed || player.world != subscription.world) {
+				gone.add(player);
+			}
+		});
+		for (PlayerEntity player : gone) {
+			unsubscribe(player);
+		}
+	}
+
+	public static void clear() {
+		SUBSCRIBERS.clear();
+		BY_PLAYER.clear();
+	}
+
+	private static class Subscription {
+		private final World world;
+		private final long pos;
+
+		private Subscription(World world, long pos) {
+			this.world = world;
+			this.pos = pos;
+		}
+	}
+
+}
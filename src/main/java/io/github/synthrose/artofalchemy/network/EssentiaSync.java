@@ -0,0 +1,228 @@
+package io.github.synthrose.artofalchemy.network;
+
+import io.github.synthrose.artofalchemy.essentia.Essentia;
+import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.essentia.EssentiaStack;
+import io.github.synthrose.artofalchemy.essentia.RegistryEssentia;
+import io.netty.buffer.Unpooled;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.*;
+
+// Binary, delta-encoded essentia sync. The server remembers what it last sent each player for each container and
+// only writes the amounts that changed, as varint raw id/amount pairs; capacity, IO flags and the whitelist are only
+// written when they change. The client keeps the matching state in an LRU of the same capacity. Both sides only
+// move a key to the back when a packet for it is sent, so they evict the same entries, and an evicted entry is
+// simply resent in full.
+public class EssentiaSync {
+
+	public static final int CAPACITY = 256;
+
+	public static final int FULL = 1;
+	public static final int STATIC = 2;
+	public static final int REQUIRED = 4;
+
+	private static final int INPUT = 1;
+	private static final int OUTPUT = 2;
+	private static final int INFINITE = 4;
+	private static final int WHITELIST_ENABLED = 8;
+
+	private static final Map<PlayerEntity, EssentiaSync> TRACKERS = new WeakHashMap<>();
+
+	private final Map<Key, Snapshot> snapshots = lru();
+	private World world;
+
+	// Insertion-ordered map capped at CAPACITY entries; callers remove and re-put a key to mark it as recently used
+	public static <V> Map<Key, V> lru() {
+		return new LinkedHashMap<Key, V>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+				return size() > CAPACITY;
+			}
+		};
+	}
+
+	public static synchronized EssentiaSync get(PlayerEntity player) {
+		EssentiaSync sync = TRACKERS.computeIfAbsent(player, (key) -> new EssentiaSync());
+		// Keys don't include the dimension, so start over when the player changes worlds
+		if (sync.world != player.world) {
+			sync.snapshots.clear();
+			sync.world = player.world;
+		}
+		return sync;
+	}
+
+	// Returns the packet that brings this player up to date, or null if they have already seen this state
+	public PacketByteBuf encode(BlockPos pos, int essentiaId, EssentiaContainer container, EssentiaStack required) {
+		Key key = new Key(pos, essentiaId);
+		Snapshot last = snapshots.get(key);
+
+		int flags = 0;
+		if (last == null) {
+			flags |= FULL;
+			last = Snapshot.EMPTY;
+		}
+		// Requirements are replaced rather than modified, so the same instance means nothing changed
+		if (required != null && required != last.requiredSource &&
+				(last.required == null || !required.equals(last.required))) {
+			flags |= REQUIRED;
+		}
+		Snapshot current = new Snapshot(container, required, (flags & REQUIRED) != 0 ? null : last.required);
+		if (last == Snapshot.EMPTY || !current.sameStatics(last)) {
+			flags |= STATIC;
+		}
+		List<Essentia> changed = new ArrayList<>();
+		for (Essentia essentia : RegistryEssentia.INSTANCE) {
+			if (current.contents.getCount(essentia) != last.contents.getCount(essentia)) {
+				changed.add(essentia);
+			}
+		}
+		if (flags == 0 && changed.isEmpty()) {
+			return null;
+		}
+		snapshots.remove(key);
+		snapshots.put(key, current);
+
+		PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
+		data.writeVarInt(essentiaId);
+		data.writeBlockPos(pos);
+		data.writeByte(flags);
+		if ((flags & STATIC) != 0) {
+			data.writeByte(current.ioFlags);
+			data.writeVarInt(current.capacity == null ? 0 : current.capacity + 1);
+			data.writeVarInt(current.whitelist.size());
+			for (Essentia essentia : current.whitelist) {
+				data.writeVarInt(RegistryEssentia.INSTANCE.getRawId(essentia));
+			}
+		}
+		data.writeVarInt(changed.size());
+		for (Essentia essentia : changed) {
+			data.writeVarInt(RegistryEssentia.INSTANCE.getRawId(essentia));
+			data.writeVarInt(current.contents.getCount(essentia));
+		}
+		if ((flags & REQUIRED) != 0) {
+			writeStack(data, required);
+		}
+		return data;
+	}
+
+	public static void writeStack(PacketByteBuf data, EssentiaStack stack) {
+		data.writeVarInt(stack.size());
+		stack.forEach((essentia, amount) -> {
+			data.writeVarInt(RegistryEssentia.INSTANCE.getRawId(essentia));
+			data.writeVarInt(amount);
+		});
+	}
+
+	public static EssentiaStack readStack(PacketByteBuf data) {
+		EssentiaStack stack = new EssentiaStack();
+		int size = data.readVarInt();
+		for (int i = 0; i < size; i++) {
+			Essentia essentia = RegistryEssentia.INSTANCE.get(data.readVarInt());
+			int amount = data.readVarInt();
+			if (essentia != null) {
+				stack.set(essentia, amount);
+			}
+		}
+		return stack;
+	}
+
+	// Reads the body of an essentia packet after the id and position, updating the given container (and
+	// requirements, if any were sent) in place
+	public static void applyTo(PacketByteBuf data, int flags, EssentiaContainer container, EssentiaStack required) {
+		if ((flags & STATIC) != 0) {
+			int ioFlags = data.readByte();
+			container.setInput((ioFlags & INPUT) != 0);
+			container.setOutput((ioFlags & OUTPUT) != 0);
+			container.setInfinite((ioFlags & INFINITE) != 0);
+			container.setWhitelistEnabled((ioFlags & WHITELIST_ENABLED) != 0);
+			int capacity = data.readVarInt();
+			if (capacity == 0) {
+				container.setUnlimitedCapacity();
+			} else {
+				container.setCapacity(capacity - 1);
+			}
+			Set<Essentia> whitelist = new HashSet<>();
+			int size = data.readVarInt();
+			for (int i = 0; i < size; i++) {
+				Essentia essentia = RegistryEssentia.INSTANCE.get(data.readVarInt());
+				if (essentia != null) {
+					whitelist.add(essentia);
+				}
+			}
+			container.setWhitelist(whitelist);
+		}
+		int changes = data.readVarInt();
+		for (int i = 0; i < changes; i++) {
+			Essentia essentia = RegistryEssentia.INSTANCE.get(data.readVarInt());
+			int amount = data.readVarInt();
+			if (essentia != null) {
+				container.getContents().set(essentia, amount);
+			}
+		}
+		if ((flags & REQUIRED) != 0) {
+			EssentiaStack stack = readStack(data);
+			required.clear();
+			required.putAll(stack);
+		}
+	}
+
+	public static final class Key {
+		private final long pos;
+		private final int essentiaId;
+
+		public Key(BlockPos pos, int essentiaId) {
+			this.pos = pos.asLong();
+			this.essentiaId = essentiaId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return pos == other.pos && essentiaId == other.essentiaId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(pos) * 31 + essentiaId;
+		}
+	}
+
+	private static final class Snapshot {
+		private static final Snapshot EMPTY = new Snapshot(new EssentiaContainer(), null, null);
+
+		private final EssentiaStack contents;
+		private final EssentiaStack requiredSource;
+		private final EssentiaStack required;
+		private final Set<Essentia> whitelist;
+		private final Integer capacity;
+		private final int ioFlags;
+
+		// Reuses the previous copy of the requirements when they are known to be unchanged
+		private Snapshot(EssentiaContainer container, EssentiaStack required, EssentiaStack unchangedRequired) {
+			this.contents = container.getContents().copy();
+			this.requiredSource = required;
+			if (required == null) {
+				this.required = null;
+			} else {
+				this.required = unchangedRequired != null ? unchangedRequired : required.copy();
+			}
+			this.whitelist = new HashSet<>(container.getWhitelist());
+			this.capacity = container.getCapacity();
+			this.ioFlags = (container.isInput() ? INPUT : 0) | (container.isOutput() ? OUTPUT : 0) |
+					(container.isInfinite() ? INFINITE : 0) | (container.isWhitelistEnabled() ? WHITELIST_ENABLED : 0);
+		}
+
+		private boolean sameStatics(Snapshot other) {
+			return ioFlags == other.ioFlags && Objects.equals(capacity, other.capacity) &&
+					whitelist.equals(other.whitelist);
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package io.github.synthrose.artofalchemy.network;
+
+import io.github.synthrose.artofalchemy.AoAConfig;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
+import net.fabricmc.fabric.api.server.PlayerStream;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.World;
+
+import java.util.*;
+
+// Coalesces client syncs of block entities. markDirty() schedules a sync instead of sending one, and at the end of
+// the world tick each scheduled block entity is synced once, at most once per syncInterval ticks. Block entities
+// that nobody is watching are dropped; players that start watching get their state with the chunk data.
+public class SyncScheduler {
+
+	private static final Map<World, SyncScheduler> SCHEDULERS = new WeakHashMap<>();
+
+	private final Set<BlockEntity> pending = new LinkedHashSet<>();
+	private final Object2LongOpenHashMap<BlockEntity> lastSynced = new Object2LongOpenHashMap<>();
+
+	private static SyncScheduler get(World world) {
+		return SCHEDULERS.computeIfAbsent(world, (key) -> new SyncScheduler());
+	}
+
+	public static <T extends BlockEntity & BlockEntityClientSerializable> void schedule(T be) {
+		if (be.hasWorld() && !be.getWorld().isClient()) {
+			get(be.getWorld()).pending.add(be);
+		}
+	}
+
+	public static void clear() {
+		SCHEDULERS.clear();
+	}
+
+	public static void flush(ServerWorld world) {
+		SyncScheduler scheduler = SCHEDULERS.get(world);
+		if (scheduler != null) {
+			scheduler.flush(world.getTime(), AoAConfig.get().syncInterval);
+		}
+	}
+
+	private void flush(long time, int interval) {
+		if (!lastSynced.isEmpty()) {
+			Iterator<Object2LongMap.Entry<BlockEntity>> iterator = lastSynced.object2LongEntrySet().fastIterator();
+			while (iterator.hasNext()) {
+				if (time - iterator.next().getLongValue() >= interval) {
+					iterator.remove();
+				}
+			}
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		Iterator<BlockEntity> iterator = pending.iterator();
+		while (iterator.hasNext()) {
+			BlockEntity be = iterator.next();
+			if (be.isRemoved() || !be.hasWorld()) {
+				iterator.remove();
+			} else if (!lastSynced.containsKey(be)) {
+				iterator.remove();
+				if (PlayerStream.watching(be).findAny().isPresent()) {
+					((BlockEntityClientSerializable) be).sync();
+					lastSynced.put(be, time);
+				}
+			}
+		}
+	}
+
+}
@@ -51,7 +51,7 @@ public class RecipeDissolution implements Recipe<Inventory> {
 	}
 	
 	public EssentiaStack getEssentia() {
-		return (EssentiaStack) essentia.clone();
+		return essentia.copy();
 	}
 	
 	@Override
@@ -0,0 +1,99 @@
+package io.github.synthrose.artofalchemy.recipe;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Maps items to the alchemy recipes that could match them, so lookups are a hash probe plus a few Ingredient tests
+// instead of vanilla's linear getFirstMatch() scan. An index is built for each RecipeManager the first time it is
+// queried; /reload swaps in a fresh RecipeManager, so a new index is built and published in one step.
+public class RecipeIndex {
+
+	private static final Map<RecipeManager, RecipeIndex> INDICES = Collections.synchronizedMap(new WeakHashMap<>());
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+	private static int generations = 0;
+
+	private final int generation;
+	private final Map<RecipeType<?>, Map<Item, List<Recipe<Inventory>>>> index = new HashMap<>();
+
+	private RecipeIndex(RecipeManager manager, int generation) {
+		this.generation = generation;
+		build(manager, AoARecipes.CALCINATION, RecipeCalcination::getInput);
+		build(manager, AoARecipes.DISSOLUTION, RecipeDissolution::getInput);
+		build(manager, AoARecipes.PROJECTION, RecipeProjection::getInput);
+		build(manager, AoARecipes.SYNTHESIS, RecipeSynthesis::getTarget);
+	}
+
+	public static RecipeIndex get(World world) {
+		RecipeManager manager = world.getRecipeManager();
+		RecipeIndex index = INDICES.get(manager);
+		if (index == null) {
+			synchronized (INDICES) {
+				index = INDICES.get(manager);
+				if (index == null) {
+					index = new RecipeIndex(manager, ++generations);
+					INDICES.put(manager, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private <T extends Recipe<Inventory>> void build(RecipeManager manager, RecipeType<T> type, Function<T, Ingredient> key) {
+		Map<Item, List<Recipe<Inventory>>> byItem = new HashMap<>();
+		for (T recipe : manager.listAllOfType(type)) {
+			IntList ids = key.apply(recipe).getIds();
+			for (int i = 0; i < ids.size(); i++) {
+				Item item = Registry.ITEM.get(ids.getInt(i));
+				List<Recipe<Inventory>> candidates = byItem.computeIfAbsent(item, (__) -> new ArrayList<>(1));
+				if (candidates.isEmpty() || candidates.get(candidates.size() - 1) != recipe) {
+					candidates.add(recipe);
+				}
+			}
+		}
+		index.put(type, byItem);
+	}
+
+	// Returns the first recipe of the given type indexed under the key item that matches the inventory.
+	// The key is the input item for calcination, dissolution and projection, and the target item for synthesis.
+	@SuppressWarnings("unchecked")
+	public <T extends Recipe<Inventory>> Optional<T> getFirstMatch(RecipeType<T> type, Inventory inv, World world, Item key) {
+		Map<Item, List<Recipe<Inventory>>> byItem = index.get(type);
+		List<Recipe<Inventory>> candidates = byItem == null ? null : byItem.get(key);
+		if (candidates != null) {
+			for (Recipe<Inventory> recipe : candidates) {
+				if (recipe.matches(inv, world)) {
+					HITS.incrementAndGet();
+					return Optional.of((T) recipe);
+				}
+			}
+		}
+		MISSES.incrementAndGet();
+		return Optional.empty();
+	}
+
+	// Increases every time any index is (re)built; machines compare it to know when a cached recipe is stale.
+	public int getGeneration() {
+		return generation;
+	}
+
+	public static long getHits() {
+		return HITS.get();
+	}
+
+	public static long getMisses() {
+		return MISSES.get();
+	}
+
+}
@@ -54,12 +54,16 @@ public class RecipeSynthesis implements Recipe<Inventory> {
 		return id;
 	}
 	
+	public Ingredient getTarget() {
+		return target;
+	}
+	
 	public Ingredient getMateria() {
 		return materia;
 	}
 	
 	public EssentiaStack getEssentia() {
-		return (EssentiaStack) essentia.clone();
+		return essentia.copy();
 	}
 	
 	@Override
@@ -27,6 +27,7 @@ public class AoARenderers {
 	@Environment(EnvType.CLIENT)
 	public static void registerRenderers() {
 		BlockEntityRendererRegistry.INSTANCE.register(AoABlockEntities.TANK, RendererTank::new);
+		RendererTank.registerReloadListener();
 		BlockRenderLayerMap.INSTANCE.putBlock(AoABlocks.TANK, RenderLayer.getCutout());
 
 		RendererFluid.setupFluidRendering(AoAFluids.ALKAHEST, AoAFluids.ALKAHEST_FLOWING,
@@ -1,9 +1,14 @@
 package io.github.synthrose.artofalchemy.render;
 
-import io.github.synthrose.artofalchemy.util.AoAHelper;
+import io.github.synthrose.artofalchemy.ArtOfAlchemy;
 import io.github.synthrose.artofalchemy.block.AoABlocks;
+import io.github.synthrose.artofalchemy.block.BlockTank;
 import io.github.synthrose.artofalchemy.blockentity.BlockEntityTank;
 import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.MinecraftClient;
@@ -11,32 +16,96 @@ import net.minecraft.client.options.GraphicsMode;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.VertexConsumerProvider;
+import net.minecraft.client.render.WorldRenderer;
 import net.minecraft.client.render.block.entity.BlockEntityRenderDispatcher;
 import net.minecraft.client.render.block.entity.BlockEntityRenderer;
 import net.minecraft.client.texture.Sprite;
 import net.minecraft.client.util.math.MatrixStack;
-import net.minecraft.state.property.Property;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourceType;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Matrix3f;
 import net.minecraft.util.math.Matrix4f;
-import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 
-import java.util.Collection;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 // Shoutouts to 2xsaiko
 
+// Each column of connected tanks is rendered by its bottom tank, as one mesh. The mesh is cached per bottom tank and
+// only rebuilt when a tank in the column changes its contents or block state, or is removed. Meshes hold their tanks
+// weakly, so the cache never keeps an unloaded tank alive.
 public class RendererTank extends BlockEntityRenderer<BlockEntityTank> {
 
+    private static final float HALF_WIDTH = 7f/16f;
+    private static final float MIN = 0.5f - HALF_WIDTH;
+    private static final float MAX = 0.5f + HALF_WIDTH;
+    // Build height, in case a column's block states ever disagree with the world
+    private static final int MAX_HEIGHT = 256;
+
+    // Looked up again after every resource reload
+    private static Sprite sprite = null;
+
     MinecraftClient client = MinecraftClient.getInstance();
+    private final Map<BlockEntityTank, ColumnMesh> meshes = new WeakHashMap<>();
 
     public RendererTank(BlockEntityRenderDispatcher dispatcher) {
         super(dispatcher);
     }
 
+    public static void registerReloadListener() {
+        ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES)
+                .registerReloadListener(new SimpleSynchronousResourceReloadListener() {
+
+            @Override
+            public void apply(ResourceManager manager) {
+                sprite = null;
+            }
+
+            @Override
+            public Identifier getFabricId() {
+                return ArtOfAlchemy.id("tank_reload_listener");
+            }
+
+        });
+    }
+
+    private Sprite getSprite() {
+        if (sprite == null) {
+            sprite = client.getBlockRenderManager().getModel(AoABlocks.ALKAHEST.getDefaultState()).getSprite();
+        }
+        return sprite;
+    }
+
+    // BlockTank sets CONNECTED_TOP on a tank with another tank below it, and CONNECTED_BOTTOM on one with a tank above
+    private static boolean hasTankBelow(BlockState state) {
+        return state.contains(BlockTank.CONNECTED_TOP) && state.get(BlockTank.CONNECTED_TOP);
+    }
+
+    private static boolean hasTankAbove(BlockState state) {
+        return state.contains(BlockTank.CONNECTED_BOTTOM) && state.get(BlockTank.CONNECTED_BOTTOM);
+    }
+
     @Override
     public void render(BlockEntityTank blockEntity, float tickDelta, MatrixStack matrices, VertexConsumerProvider vertexConsumers, int light, int overlay) {
-        Matrix4f model = matrices.peek().getModel();
-        Matrix3f normal = matrices.peek().getNormal();
+        if (hasTankBelow(blockEntity.getCachedState())) {
+            meshes.remove(blockEntity);
+            return;
+        }
+        ColumnMesh mesh = meshes.get(blockEntity);
+        if (mesh == null || !mesh.isValid()) {
+            mesh = ColumnMesh.build(blockEntity);
+            meshes.put(blockEntity, mesh);
+        }
+        if (mesh.isEmpty()) {
+            return;
+        }
+
         VertexConsumer buffer;
         if (client.options.graphicsMode == GraphicsMode.FABULOUS) {
             // Translucent-layer quads don't show up under Fabulous settings, so here's a hacky workaround :)
@@ -44,81 +113,167 @@ public class RendererTank extends BlockEntityRenderer<BlockEntityTank> {
         } else {
             buffer = vertexConsumers.getBuffer(RenderLayer.getTranslucent());
         }
-        Sprite sprite = client.getBlockRenderManager().getModel(AoABlocks.ALKAHEST.getDefaultState()).getSprite();
-        BlockState state = blockEntity.getWorld().getBlockState(blockEntity.getPos());
-        Collection<Property<?>> properties = state.getProperties();
-        EssentiaContainer container = blockEntity.getContainer();
-
-        if (container != null && !blockEntity.getContainer().isEmpty()) {
-            World world = blockEntity.getWorld();
-            boolean connectedTop = world.getBlockState(blockEntity.getPos().up()).getBlock() == AoABlocks.TANK;
-            boolean connectedBottom = world.getBlockState(blockEntity.getPos().down()).getBlock() == AoABlocks.TANK;
-
-            float halfWidth = 7f/16f;
-            float min = 0.5f - halfWidth;
-            float max = 0.5f + halfWidth;
-            float minY = connectedBottom ? 0.0f : min;
-            float maxY = connectedTop ? 1.0f : max;
-            float midY = maxY;
-
-            float minU = sprite.getMinU();
-            float maxU = sprite.getMaxU();
-            float minV = sprite.getMinV();
-            float maxV = sprite.getMaxV();
-            float midV = maxV;
+        mesh.emit(matrices.peek().getModel(), matrices.peek().getNormal(), buffer, getSprite(), blockEntity.getWorld(),
+                light);
+    }
 
-            if (!container.isInfinite() && !container.hasUnlimitedCapacity()) {
-                midY = minY + (maxY - minY) * (float) container.getCount() / container.getCapacity();
-                midV = minV + (maxV - minV) * (float) container.getCount() / container.getCapacity();
-            }
+    // A column reaches above its bottom tank, so it has to be drawn even when that tank is off screen
+    @Override
+    public boolean rendersOutsideBoundingBox(BlockEntityTank blockEntity) {
+        BlockState state = blockEntity.getCachedState();
+        return hasTankAbove(state) && !hasTankBelow(state);
+    }
 
-            Vec3i color = AoAHelper.integerColor(blockEntity.getContainer().getColor());
-            int r = color.getX();
-            int g = color.getY();
-            int b = color.getZ();
-            int a = 255;
+    private static class ColumnMesh {
+        private final List<WeakReference<BlockEntityTank>> tanks = new ArrayList<>();
+        private final List<BlockPos> positions = new ArrayList<>();
+        private final IntArrayList versions = new IntArrayList();
+        private final List<BlockState> states = new ArrayList<>();
+        // Per vertex: x, y, z, u and v as fractions of the sprite, then the normal
+        private final FloatArrayList vertices = new FloatArrayList();
+        // Per quad: the color, and the index of the tank it belongs to, whose light it uses
+        private final IntArrayList colors = new IntArrayList();
+        private final IntArrayList quadTanks = new IntArrayList();
 
-            buffer.vertex(model, min, minY, min).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, 0.0f, 0.0f, -1.0f).next();
-            buffer.vertex(model, min, midY, min).color(r, g, b, a).texture(minU, midV).light(light).normal(normal, 0.0f, 0.0f, -1.0f).next();
-            buffer.vertex(model, max, midY, min).color(r, g, b, a).texture(maxU, midV).light(light).normal(normal, 0.0f, 0.0f, -1.0f).next();
-            buffer.vertex(model, max, minY, min).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, 0.0f, 0.0f, -1.0f).next();
+        private static ColumnMesh build(BlockEntityTank bottom) {
+            ColumnMesh mesh = new ColumnMesh();
+            World world = bottom.getWorld();
+            List<BlockEntityTank> column = new ArrayList<>();
+            BlockEntityTank tank = bottom;
+            while (tank != null) {
+                column.add(tank);
+                mesh.tanks.add(new WeakReference<>(tank));
+                mesh.positions.add(tank.getPos());
+                mesh.versions.add(tank.getRenderVersion());
+                mesh.states.add(tank.getCachedState());
+                BlockEntity above = null;
+                if (hasTankAbove(tank.getCachedState()) && column.size() < MAX_HEIGHT) {
+                    above = world.getBlockEntity(tank.getPos().up());
+                }
+                tank = above instanceof BlockEntityTank ? (BlockEntityTank) above : null;
+            }
+            for (int i = 0; i < column.size(); i++) {
+                BlockEntityTank next = i + 1 < column.size() ? column.get(i + 1) : null;
+                mesh.addTank(column.get(i), i, i > 0, next != null, next != null && !next.getContainer().isEmpty());
+            }
+            return mesh;
+        }
 
-            buffer.vertex(model, min, minY, min).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, -1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, min, minY, max).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, -1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, min, midY, max).color(r, g, b, a).texture(maxU, midV).light(light).normal(normal, -1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, min, midY, min).color(r, g, b, a).texture(minU, midV).light(light).normal(normal, -1.0f, 0.0f, 0.0f).next();
+        private boolean isValid() {
+            for (int i = 0; i < tanks.size(); i++) {
+                BlockEntityTank tank = tanks.get(i).get();
+                if (tank == null || tank.isRemoved() || tank.getRenderVersion() != versions.getInt(i) ||
+                        tank.getCachedState() != states.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            buffer.vertex(model, min, minY, max).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, 0.0f, 0.0f, 1.0f).next();
-            buffer.vertex(model, max, minY, max).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, 0.0f, 0.0f, 1.0f).next();
-            buffer.vertex(model, max, midY, max).color(r, g, b, a).texture(maxU, midV).light(light).normal(normal, 0.0f, 0.0f, 1.0f).next();
-            buffer.vertex(model, min, midY, max).color(r, g, b, a).texture(minU, midV).light(light).normal(normal, 0.0f, 0.0f, 1.0f).next();
+        private boolean isEmpty() {
+            return colors.isEmpty();
+        }
 
-            buffer.vertex(model, max, minY, min).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, 1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, max, midY, min).color(r, g, b, a).texture(minU, midV).light(light).normal(normal, 1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, max, midY, max).color(r, g, b, a).texture(maxU, midV).light(light).normal(normal, 1.0f, 0.0f, 0.0f).next();
-            buffer.vertex(model, max, minY, max).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, 1.0f, 0.0f, 0.0f).next();
+        private void addTank(BlockEntityTank tank, int offset, boolean connectedBottom, boolean connectedTop,
+                             boolean coveredTop) {
+            EssentiaContainer container = tank.getContainer();
+            if (container == null || container.isEmpty()) {
+                return;
+            }
+            float minY = offset + (connectedBottom ? 0.0f : MIN);
+            float maxY = offset + (connectedTop ? 1.0f : MAX);
+            float midY = maxY;
+            float midV = 1.0f;
+            if (!container.isInfinite() && !container.hasUnlimitedCapacity()) {
+                float fill = (float) container.getCount() / container.getCapacity();
+                midY = minY + (maxY - minY) * fill;
+                midV = fill;
+            }
+            int color = container.getColor();
 
+            quad(color, 0.0f, 0.0f, -1.0f,
+                    MIN, minY, MIN, 0, 0,
+                    MIN, midY, MIN, 0, midV,
+                    MAX, midY, MIN, 1, midV,
+                    MAX, minY, MIN, 1, 0);
+            quad(color, -1.0f, 0.0f, 0.0f,
+                    MIN, minY, MIN, 0, 0,
+                    MIN, minY, MAX, 1, 0,
+                    MIN, midY, MAX, 1, midV,
+                    MIN, midY, MIN, 0, midV);
+            quad(color, 0.0f, 0.0f, 1.0f,
+                    MIN, minY, MAX, 0, 0,
+                    MAX, minY, MAX, 1, 0,
+                    MAX, midY, MAX, 1, midV,
+                    MIN, midY, MAX, 0, midV);
+            quad(color, 1.0f, 0.0f, 0.0f,
+                    MAX, minY, MIN, 0, 0,
+                    MAX, midY, MIN, 0, midV,
+                    MAX, midY, MAX, 1, midV,
+                    MAX, minY, MAX, 1, 0);
             if (!connectedBottom) {
-                buffer.vertex(model, min, minY, min).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, max, minY, min).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, max, minY, max).color(r, g, b, a).texture(maxU, maxV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, min, minY, max).color(r, g, b, a).texture(minU, maxV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
+                quad(color, 0.0f, -1.0f, 0.0f,
+                        MIN, minY, MIN, 0, 0,
+                        MAX, minY, MIN, 1, 0,
+                        MAX, minY, MAX, 1, 1,
+                        MIN, minY, MAX, 0, 1);
+            }
+            if (!coveredTop) {
+                quad(color, 0.0f, -1.0f, 0.0f,
+                        MIN, midY, MIN, 0, 0,
+                        MIN, midY, MAX, 0, 1,
+                        MAX, midY, MAX, 1, 1,
+                        MAX, midY, MIN, 1, 0);
+            }
+            while (quadTanks.size() < colors.size()) {
+                quadTanks.add(offset);
             }
+        }
 
-            boolean renderBottom = true;
-            BlockEntity topBE = world.getBlockEntity(blockEntity.getPos().up());
-            if (topBE instanceof BlockEntityTank) {
-                if (!((BlockEntityTank) topBE).getContainer().isEmpty()) {
-                    renderBottom = false;
-                }
+        // Takes x, y, z, u and v for each of the four vertices
+        private void quad(int color, float nx, float ny, float nz, float... corners) {
+            colors.add(color);
+            for (int i = 0; i < 20; i += 5) {
+                vertices.add(corners[i]);
+                vertices.add(corners[i + 1]);
+                vertices.add(corners[i + 2]);
+                vertices.add(corners[i + 3]);
+                vertices.add(corners[i + 4]);
+                vertices.add(nx);
+                vertices.add(ny);
+                vertices.add(nz);
             }
-            if (renderBottom) {
-                buffer.vertex(model, min, midY, min).color(r, g, b, a).texture(minU, minV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, min, midY, max).color(r, g, b, a).texture(minU, maxV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, max, midY, max).color(r, g, b, a).texture(maxU, maxV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
-                buffer.vertex(model, max, midY, min).color(r, g, b, a).texture(maxU, minV).light(light).normal(normal, 0.0f, -1.0f, 0.0f).next();
+        }
+
+        // Each tank is lit by its own block; the bottom one's light is the one the dispatcher already looked up
+        private void emit(Matrix4f model, Matrix3f normal, VertexConsumer buffer, Sprite sprite, World world,
+                          int bottomLight) {
+            int[] lights = new int[positions.size()];
+            lights[0] = bottomLight;
+            for (int i = 1; i < lights.length; i++) {
+                lights[i] = WorldRenderer.getLightmapCoordinates(world, positions.get(i));
+            }
+            float minU = sprite.getMinU();
+            float spanU = sprite.getMaxU() - minU;
+            float minV = sprite.getMinV();
+            float spanV = sprite.getMaxV() - minV;
+            float[] data = vertices.elements();
+            for (int quad = 0; quad < colors.size(); quad++) {
+                int color = colors.getInt(quad);
+                int r = (color >> 16) & 0xFF;
+                int g = (color >> 8) & 0xFF;
+                int b = color & 0xFF;
+                int light = lights[quadTanks.getInt(quad)];
+                for (int i = quad * 32; i < quad * 32 + 32; i += 8) {
+                    buffer.vertex(model, data[i], data[i + 1], data[i + 2])
+                            .color(r, g, b, 255)
+                            .texture(minU + spanU * data[i + 3], minV + spanV * data[i + 4])
+                            .light(light)
+                            .normal(normal, data[i + 5], data[i + 6], data[i + 7])
+                            .next();
+                }
             }
-       }
+        }
     }
 
 }
@@ -1,18 +1,23 @@
 package io.github.synthrose.artofalchemy.transport;
-import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.AoAConfig;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.block.Block;
-import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.nbt.IntTag;
-import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.LongArrayTag;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
 public class EssentiaNetwork {
+    // Consecutive passes without transfers after which an idle network doubles its interval
+    public static final int IDLE_PASSES = 4;
     protected final World world;
     protected final Set<BlockPos> positions = new HashSet<>();
     protected final Set<NetworkNode> nodes = new HashSet<>();
@@ -20,17 +25,83 @@ public class EssentiaNetwork {
     protected final Set<NetworkNode> pushers = new HashSet<>();
     protected final Set<NetworkNode> passives = new HashSet<>();
     protected final UUID uuid = UUID.randomUUID();
+    protected final EssentiaRouter router = new EssentiaRouter(this::isLoaded);
+    // Whether each chunk holding a node's block entity is loaded, kept current by chunk load and unload events.
+    // The network is suspended while none of them are loaded.
+    protected final Long2BooleanOpenHashMap nodeChunks = new Long2BooleanOpenHashMap();
+    protected int loadedChunks;
+    // Chunks whose positions were skipped by rebuildNodes() because they weren't loaded at the time
+    protected final LongSet deferredChunks = new LongOpenHashSet();
+    // Set when the chunks in nodeChunks or deferredChunks change, so that EssentiaNetworker re-indexes this network
+    protected boolean chunksChanged = true;
     protected long lastTicked;
+    // Token bucket for networkBandwidth: refilled every tick, spent by what the network moves
+    protected long tokens;
+    // Multiplier of the tick interval, doubled while the network stays idle and reset when it moves anything
+    protected int backoff = 1;
+    protected int idlePasses;
+    protected long nextTick;
+    protected int interval = 1;
+    protected int maxBackoff = 1;
     protected boolean dirty;
+    protected boolean nodesChanged;
+    // Snapshot endpoints between prepare() and commit() in the parallel tick
+    protected List<EssentiaRouter.Endpoint> plannedPushers;
+    protected List<EssentiaRouter.Endpoint> plannedPullers;
+    protected List<EssentiaRouter.Endpoint> plannedPassives;
+    protected long planNanos;
+    // Union-find link to the network this one was merged into, or itself if it is still live
+    protected EssentiaNetwork parent = this;
 
     EssentiaNetwork(World world) {
         this.world = world;
         lastTicked = world.getTime();
     }
 
-    EssentiaNetwork(World world, ListTag tag) {
+    // Restores a network's positions without touching the world; nodes are added as the positions are validated
+    EssentiaNetwork(World world, long[] packed) {
         this(world);
-        fromTag(tag);
+        for (long pos : packed) {
+            positions.add(BlockPos.fromLong(pos));
+        }
+    }
+
+    // Returns the live network this one has been merged into, compressing the path along the way
+    public EssentiaNetwork find() {
+        EssentiaNetwork root = this;
+        while (root.parent != root) {
+            root = root.parent;
+        }
+        EssentiaNetwork network = this;
+        while (network != root) {
+            EssentiaNetwork next = network.parent;
+            network.parent = root;
+            network = next;
+        }
+        return root;
+    }
+
+    // Moves all positions and nodes of another network into this one and links it here
+    void absorb(EssentiaNetwork other) {
+        positions.addAll(other.positions);
+        nodes.addAll(other.nodes);
+        pullers.addAll(other.pullers);
+        pushers.addAll(other.pushers);
+        passives.addAll(other.passives);
+        deferredChunks.addAll(other.deferredChunks);
+        dirty |= other.dirty;
+        nodesChanged = true;
+        other.positions.clear();
+        other.nodes.clear();
+        other.pullers.clear();
+        other.pushers.clear();
+        other.passives.clear();
+        other.nodeChunks.clear();
+        other.loadedChunks = 0;
+        other.deferredChunks.clear();
+        other.chunksChanged = true;
+        chunksChanged = true;
+        other.parent = this;
     }
 
     public World getWorld() {
@@ -59,33 +130,85 @@ public class EssentiaNetwork {
         dirty = true;
     }
 
-    public void fromTag(ListTag tag) {
-        for (Tag listElement : tag) {
-            if (listElement instanceof ListTag) {
-                ListTag posTag = (ListTag) listElement;
-                BlockPos pos = new BlockPos(posTag.getInt(0), posTag.getInt(1), posTag.getInt(2));
-                if (world.getBlockState(pos).getBlock() instanceof NetworkElement) {
-                    add(pos);
+    public LongArrayTag toTag() {
+        return EssentiaNetworker.packPositions(positions);
+    }
+
+    // Returns true if the chunk holding the node's block entity is loaded, without touching the world
+    public boolean isLoaded(NetworkNode node) {
+        return nodeChunks.get(node.getChunk());
+    }
+
+    public boolean isSuspended() {
+        return loadedChunks == 0;
+    }
+
+    public void onChunkLoad(long chunk) {
+        if (deferredChunks.remove(chunk)) {
+            dirty = true;
+        }
+        if (nodeChunks.containsKey(chunk) && !nodeChunks.get(chunk)) {
+            nodeChunks.put(chunk, true);
+            loadedChunks++;
+            wake();
+        }
+    }
+
+    // The chunks this network needs chunk load and unload events for
+    public LongSet getWatchedChunks() {
+        LongSet chunks = new LongOpenHashSet(nodeChunks.keySet());
+        chunks.addAll(deferredChunks);
+        return chunks;
+    }
+
+    // Returns true once after the watched chunks change
+    boolean pollChunksChanged() {
+        boolean changed = chunksChanged;
+        chunksChanged = false;
+        return changed;
+    }
+
+    public void onChunkUnload(long chunk) {
+        if (nodeChunks.containsKey(chunk) && nodeChunks.get(chunk)) {
+            nodeChunks.put(chunk, false);
+            loadedChunks--;
+        }
+    }
+
+    protected void indexChunks() {
+        nodeChunks.clear();
+        loadedChunks = 0;
+        for (NetworkNode node : nodes) {
+            long chunk = node.getChunk();
+            if (!nodeChunks.containsKey(chunk)) {
+                boolean loaded = isChunkLoaded(chunk);
+                nodeChunks.put(chunk, loaded);
+                if (loaded) {
+                    loadedChunks++;
                 }
             }
         }
+        nodesChanged = false;
+        chunksChanged = true;
     }
 
-    public ListTag toTag() {
-        ListTag tag = new ListTag();
-        for (BlockPos pos : positions) {
-            ListTag posTag = new ListTag();
-            posTag.add(IntTag.of(pos.getX()));
-            posTag.add(IntTag.of(pos.getY()));
-            posTag.add(IntTag.of(pos.getZ()));
-            tag.add(posTag);
-        }
-        return tag;
+    protected boolean isChunkLoaded(long chunk) {
+        return world.getChunkManager().isChunkLoaded(ChunkPos.getPackedX(chunk), ChunkPos.getPackedZ(chunk));
     }
 
+    // Positions in unloaded chunks are skipped rather than loading the chunk; their nodes are picked up by another
+    // rebuild once the chunk loads
     public void rebuildNodes() {
         nodes.clear();
+        deferredChunks.clear();
         for (BlockPos pos : positions) {
+            long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+            if (deferredChunks.contains(chunk)) {
+                continue;
+            } else if (!isChunkLoaded(chunk)) {
+                deferredChunks.add(chunk);
+                continue;
+            }
             Block block = world.getBlockState(pos).getBlock();
             if (block instanceof NetworkElement) {
                 nodes.addAll(((NetworkElement) block).getNodes(world, pos));
@@ -94,6 +217,8 @@ public class EssentiaNetwork {
         pullers.clear();
         pushers.clear();
         passives.clear();
+        nodesChanged = true;
+        chunksChanged = true;
         for (NetworkNode node : nodes) {
             switch (node.getType()) {
                 case PULL:
@@ -114,12 +239,14 @@ public class EssentiaNetwork {
         pullers.removeIf((node) -> node.getPos().equals(pos));
         pushers.removeIf((node) -> node.getPos().equals(pos));
         passives.removeIf((node) -> node.getPos().equals(pos));
+        nodesChanged = true;
     }
 
     public void addNodes(BlockPos pos) {
         Block block = world.getBlockState(pos).getBlock();
         if (block instanceof NetworkElement) {
             Set<NetworkNode> newNodes = ((NetworkElement) block).getNodes(world, pos);
+            nodesChanged |= !newNodes.isEmpty();
             for (NetworkNode node : newNodes) {
                 nodes.add(node);
                 switch (node.getType()) {
@@ -137,56 +264,142 @@ public class EssentiaNetwork {
         }
     }
 
+    // The lowest position in the network, so reports name the same block however the network has grown
+    public BlockPos getRepresentativePos() {
+        BlockPos lowest = null;
+        for (BlockPos pos : positions) {
+            if (lowest == null || pos.compareTo(lowest) < 0) {
+                lowest = pos;
+            }
+        }
+        return lowest;
+    }
+
     public void tick() {
+        if (AoAProfiler.isEnabled()) {
+            long start = System.nanoTime();
+            int moved = doTick();
+            AoAProfiler.recordNetwork(uuid, this::getRepresentativePos, System.nanoTime() - start, moved);
+        } else {
+            doTick();
+        }
+    }
+
+    // Returns the amount of essentia moved
+    protected int doTick() {
+        if (!isDue()) {
+            return 0;
+        }
+        int moved = router.route(pushers, pullers);
+        moved += router.route(pushers, passives);
+        moved += router.route(passives, pullers);
+        router.flush();
+        finishPass(moved);
+        return moved;
+    }
+
+    // Brings the nodes up to date and returns true if the network should transfer this tick
+    protected boolean isDue() {
         if (dirty) {
             rebuildNodes();
             dirty = false;
         }
+        if (nodesChanged) {
+            indexChunks();
+            wake();
+        }
+        if (isSuspended()) {
+            return false;
+        }
 
-        if (world.getTime() < lastTicked + 5) {
-            return;
+        // Rate limited networks transfer a little every tick instead of everything at once every few ticks
+        AoAConfig config = AoAConfig.get();
+        AoAConfig.PortSettings ports = config.portSettings;
+        boolean limited = config.networkBandwidth > 0 || ports.inserterRate > 0 || ports.extractorRate > 0 ||
+                ports.passiveRate > 0;
+        int maxTicks = Math.max(1, config.networkTickInterval);
+        interval = limited ? 1 : maxTicks;
+        maxBackoff = Math.max(1, config.networkMaxInterval / interval);
+        // Each network only ticks in its own phase of the interval, so networks created together don't all tick
+        // in the same game tick
+        long time = world.getTime();
+        if (time < nextTick || Math.floorMod(time - getPhase(interval), interval) != 0) {
+            return false;
         }
-        lastTicked = world.getTime();
+        // The most ticks of allowance a network or port can save up is one regular interval
+        int ticks = (int) Math.min(time - lastTicked, maxTicks);
+        lastTicked = time;
 
-        for (NetworkNode pusher : pushers) {
-            for (NetworkNode puller : pullers) {
-                transfer(pusher, puller);
-            }
-            for (NetworkNode passive : passives) {
-                transfer(pusher, passive);
-            }
+        int budget = Integer.MAX_VALUE;
+        if (config.networkBandwidth > 0) {
+            long bandwidth = config.networkBandwidth;
+            tokens = Math.min(tokens + bandwidth * ticks, bandwidth * maxTicks);
+            budget = (int) Math.min(tokens, Integer.MAX_VALUE);
+        } else {
+            tokens = 0;
         }
-        for (NetworkNode puller : pullers) {
-            for (NetworkNode passive : passives) {
-                transfer(passive, puller);
-            }
+        router.limit(budget, ticks);
+        return true;
+    }
+
+    // Charges the bandwidth used by a pass and schedules the next one, backing off while nothing moves
+    protected void finishPass(int moved) {
+        if (tokens > 0) {
+            tokens = Math.max(0, tokens - moved);
+        }
+        if (moved > 0) {
+            backoff = 1;
+            idlePasses = 0;
+        } else if (++idlePasses >= IDLE_PASSES) {
+            backoff = Math.min(backoff * 2, maxBackoff);
+            idlePasses = 0;
         }
+        nextTick = lastTicked + (long) interval * Math.min(backoff, maxBackoff);
     }
 
-    public void transfer(NetworkNode from, NetworkNode to) {
-        BlockEntity fromBE = from.getBlockEntity();
-        BlockEntity toBE = to.getBlockEntity();
-        if (fromBE instanceof HasEssentia && toBE instanceof HasEssentia) {
-            for (int i = 0; i < ((HasEssentia) fromBE).getNumContainers(); i++) {
-                EssentiaContainer fromContainer;
-                if (from.getDirection().isPresent()) {
-                    fromContainer = ((HasEssentia) fromBE).getContainer(from.getDirection().get().getOpposite());
-                } else {
-                    fromContainer = ((HasEssentia) fromBE).getContainer();
-                }
-                for (int j = 0; j < ((HasEssentia) toBE).getNumContainers(); j++) {
-                    EssentiaContainer toContainer;
-                    if (to.getDirection().isPresent()) {
-                        toContainer = ((HasEssentia) toBE).getContainer(to.getDirection().get().getOpposite());
-                    } else {
-                        toContainer = ((HasEssentia) toBE).getContainer();
-                    }
-                    fromContainer.pushContents(toContainer);
-                }
-            }
-            fromBE.markDirty();
-            toBE.markDirty();
+    // Returns the network to its regular interval, after its nodes or loaded chunks change
+    public void wake() {
+        backoff = 1;
+        idlePasses = 0;
+        nextTick = 0;
+    }
+
+    protected int getPhase(int interval) {
+        return Math.floorMod(uuid.hashCode(), interval);
+    }
+
+    // The parallel tick splits doTick() in three: prepare() and commit() run on the server thread, and plan() runs
+    // on a worker thread in between, routing only between the snapshots taken by prepare().
+
+    // Returns true if the network is due this tick, with its endpoints resolved to snapshots
+    boolean prepare() {
+        if (!isDue()) {
+            return false;
+        }
+        plannedPushers = router.resolve(pushers, true);
+        plannedPullers = router.resolve(pullers, true);
+        plannedPassives = router.resolve(passives, true);
+        return true;
+    }
+
+    void plan() {
+        long start = System.nanoTime();
+        router.route(plannedPushers, plannedPullers);
+        router.route(plannedPushers, plannedPassives);
+        router.route(plannedPassives, plannedPullers);
+        planNanos = System.nanoTime() - start;
+    }
+
+    int commit() {
+        long start = System.nanoTime();
+        int moved = router.commit();
+        router.flush();
+        finishPass(moved);
+        plannedPushers = plannedPullers = plannedPassives = null;
+        if (AoAProfiler.isEnabled()) {
+            AoAProfiler.recordNetwork(uuid, this::getRepresentativePos, planNanos + System.nanoTime() - start, moved);
         }
+        return moved;
     }
 
     public boolean add(BlockPos pos) {
@@ -2,23 +2,33 @@ package io.github.synthrose.artofalchemy.transport;
 
 import io.github.synthrose.artofalchemy.AoAConfig;
 import io.github.synthrose.artofalchemy.ArtOfAlchemy;
+import io.github.synthrose.artofalchemy.util.AoAProfiler;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.fabricmc.fabric.api.util.NbtType;
 import net.minecraft.block.Block;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.IntTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.PersistentState;
 import net.minecraft.world.dimension.DimensionType;
 import org.apache.logging.log4j.Level;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 // Thanks, 2xsaiko!
 public class EssentiaNetworker extends PersistentState {
+    public static final int FORMAT_VERSION = 2;
+    private static ForkJoinPool pool = null;
     public final int processingLimit;
     protected final ServerWorld world;
     protected final Set<EssentiaNetwork> networks = new HashSet<>();
@@ -26,7 +36,18 @@ public class EssentiaNetworker extends PersistentState {
     protected int processed = 0;
 
     protected final Set<BlockPos> legacyOrphans = new HashSet<>();
-    protected final Map<BlockPos, EssentiaNetwork> cache = new HashMap<>();
+    // Union-find index from packed positions to networks. Entries may point at a network that has since been merged
+    // into another; EssentiaNetwork.find() follows those links to the surviving network.
+    protected final Long2ObjectOpenHashMap<EssentiaNetwork> cache = new Long2ObjectOpenHashMap<>();
+    // Loaded positions that haven't been checked against the world yet, keyed by packed chunk position
+    protected final Long2ObjectOpenHashMap<List<BlockPos>> unvalidated = new Long2ObjectOpenHashMap<>();
+    // Chunks that loaded with unvalidated positions in them. The world can't be read from inside the chunk load event,
+    // since the chunk isn't fully loaded yet, so they are validated at the start of the next tick instead.
+    protected final LongSet pendingValidation = new LongOpenHashSet();
+    // The live networks watching each chunk, so chunk events only reach the networks they concern. Refreshed at the
+    // end of every tick from the networks whose watched chunks changed.
+    protected final Long2ObjectOpenHashMap<Set<EssentiaNetwork>> chunkIndex = new Long2ObjectOpenHashMap<>();
+    protected final Map<EssentiaNetwork, LongSet> indexedChunks = new HashMap<>();
 
     public EssentiaNetworker(ServerWorld world) {
         super(getName(world.getDimension()));
@@ -34,35 +55,55 @@ public class EssentiaNetworker extends PersistentState {
         processingLimit = AoAConfig.get().networkProcessingLimit;
     }
 
+    // Save format version 2 stores each network, and the orphans, as a LongArrayTag of packed positions that is
+    // sorted and delta-encoded so that the compressed file stays small. Saves without a version use the legacy
+    // list-of-coordinates format, which is still read and gets rewritten in the new format on the next save.
     @Override
     public void fromTag(CompoundTag tag) {
-        ListTag networkList = tag.getList("networks", NbtType.LIST);
-        for (Tag networkTag : networkList) {
-            if (networkTag instanceof ListTag && ((ListTag) networkTag).size() > 0) {
-                networks.add(new EssentiaNetwork(world, (ListTag) networkTag));
+        if (tag.getInt("version") >= FORMAT_VERSION) {
+            ListTag networkList = tag.getList("networks", NbtType.LONG_ARRAY);
+            for (Tag networkTag : networkList) {
+                long[] packed = unpackPositions(((LongArrayTag) networkTag).getLongArray());
+                if (packed.length > 0) {
+                    networks.add(new EssentiaNetwork(world, packed));
+                }
+            }
+            for (long pos : unpackPositions(tag.getLongArray("orphans"))) {
+                orphans.add(BlockPos.fromLong(pos));
+            }
+        } else {
+            ListTag networkList = tag.getList("networks", NbtType.LIST);
+            for (Tag networkTag : networkList) {
+                if (networkTag instanceof ListTag && ((ListTag) networkTag).size() > 0) {
+                    networks.add(new EssentiaNetwork(world, readLegacyPositions((ListTag) networkTag)));
+                }
+            }
+            for (long pos : readLegacyPositions(tag.getList("orphans", NbtType.LIST))) {
+                orphans.add(BlockPos.fromLong(pos));
             }
+            markDirty();
+        }
+        for (long pos : readLegacyPositions(tag.getList("network_positions", NbtType.LIST))) {
+            legacyOrphans.add(BlockPos.fromLong(pos));
         }
-        ListTag orphanList = tag.getList("orphans", NbtType.LIST);
-        for (Tag orphanTag : orphanList) {
-            if (orphanTag instanceof ListTag) {
-                ListTag posTag = (ListTag) orphanTag;
-                BlockPos pos = new BlockPos(posTag.getInt(0), posTag.getInt(1), posTag.getInt(2));
-                orphans.add(pos.toImmutable());
+        rebuildCache();
+
+        // Positions are only checked against the world once their chunk is loaded, so loading never forces chunks
+        for (EssentiaNetwork network : networks) {
+            for (BlockPos pos : network.getPositions()) {
+                unvalidated.computeIfAbsent(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), (key) -> new ArrayList<>()).add(pos);
             }
         }
-        ListTag legacyList = tag.getList("network_positions", NbtType.LIST);
-        for (Tag orphanTag : legacyList) {
-            if (orphanTag instanceof ListTag) {
-                ListTag posTag = (ListTag) orphanTag;
-                BlockPos pos = new BlockPos(posTag.getInt(0), posTag.getInt(1), posTag.getInt(2));
-                legacyOrphans.add(pos.toImmutable());
+        for (long chunk : unvalidated.keySet().toLongArray()) {
+            if (world.getChunkManager().isChunkLoaded(ChunkPos.getPackedX(chunk), ChunkPos.getPackedZ(chunk))) {
+                pendingValidation.add(chunk);
             }
         }
-        rebuildCache();
     }
 
     @Override
     public CompoundTag toTag(CompoundTag tag) {
+        tag.putInt("version", FORMAT_VERSION);
         ListTag networkList = new ListTag();
         for (EssentiaNetwork network : networks) {
             if (network.getSize() > 0) {
@@ -70,23 +111,130 @@ public class EssentiaNetworker extends PersistentState {
             }
         }
         tag.put("networks", networkList);
-        ListTag orphanList = new ListTag();
-        for (BlockPos pos : orphans) {
-            ListTag posTag = new ListTag();
-            posTag.add(IntTag.of(pos.getX()));
-            posTag.add(IntTag.of(pos.getY()));
-            posTag.add(IntTag.of(pos.getZ()));
-            orphanList.add(posTag);
-        }
-        tag.put("orphans", orphanList);
+        tag.put("orphans", packPositions(orphans));
         return tag;
     }
 
+    public static LongArrayTag packPositions(Collection<BlockPos> positions) {
+        long[] packed = new long[positions.size()];
+        int i = 0;
+        for (BlockPos pos : positions) {
+            packed[i++] = pos.asLong();
+        }
+        Arrays.sort(packed);
+        for (i = packed.length - 1; i > 0; i--) {
+            packed[i] -= packed[i - 1];
+        }
+        return new LongArrayTag(packed);
+    }
+
+    public static long[] unpackPositions(long[] packed) {
+        long[] positions = packed.clone();
+        for (int i = 1; i < positions.length; i++) {
+            positions[i] += positions[i - 1];
+        }
+        return positions;
+    }
+
+    protected static long[] readLegacyPositions(ListTag list) {
+        LongArrayList positions = new LongArrayList(list.size());
+        for (Tag element : list) {
+            if (element instanceof ListTag) {
+                ListTag posTag = (ListTag) element;
+                positions.add(BlockPos.asLong(posTag.getInt(0), posTag.getInt(1), posTag.getInt(2)));
+            }
+        }
+        return positions.toLongArray();
+    }
+
+    public void onChunkLoad(ChunkPos chunk) {
+        long key = chunk.toLong();
+        if (unvalidated.containsKey(key)) {
+            pendingValidation.add(key);
+        }
+        Set<EssentiaNetwork> watching = chunkIndex.get(key);
+        if (watching != null) {
+            for (EssentiaNetwork network : watching) {
+                network.onChunkLoad(key);
+            }
+        }
+    }
+
+    public void onChunkUnload(ChunkPos chunk) {
+        long key = chunk.toLong();
+        pendingValidation.remove(key);
+        Set<EssentiaNetwork> watching = chunkIndex.get(key);
+        if (watching != null) {
+            for (EssentiaNetwork network : watching) {
+                network.onChunkUnload(key);
+            }
+        }
+    }
+
+    protected void updateChunkIndex() {
+        Iterator<Map.Entry<EssentiaNetwork, LongSet>> iterator = indexedChunks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<EssentiaNetwork, LongSet> entry = iterator.next();
+            if (!networks.contains(entry.getKey())) {
+                unindex(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+        for (EssentiaNetwork network : networks) {
+            if (network.pollChunksChanged() || !indexedChunks.containsKey(network)) {
+                LongSet previous = indexedChunks.get(network);
+                if (previous != null) {
+                    unindex(network, previous);
+                }
+                LongSet chunks = network.getWatchedChunks();
+                for (long chunk : chunks) {
+                    chunkIndex.computeIfAbsent(chunk, (key) -> new HashSet<>()).add(network);
+                }
+                indexedChunks.put(network, chunks);
+            }
+        }
+    }
+
+    protected void unindex(EssentiaNetwork network, LongSet chunks) {
+        for (long chunk : chunks) {
+            Set<EssentiaNetwork> watching = chunkIndex.get(chunk);
+            if (watching != null) {
+                watching.remove(network);
+                if (watching.isEmpty()) {
+                    chunkIndex.remove(chunk);
+                }
+            }
+        }
+    }
+
+    // Checks loaded positions in a now-loaded chunk against the world, dropping ones that are no longer network
+    // elements and adding the nodes of the rest
+    protected void validate(long chunk) {
+        List<BlockPos> positions = unvalidated.remove(chunk);
+        if (positions == null) {
+            return;
+        }
+        for (BlockPos pos : positions) {
+            getNetwork(pos).ifPresent((network) -> {
+                if (world.getBlockState(pos).getBlock() instanceof NetworkElement) {
+                    network.addNodes(pos);
+                } else {
+                    cache.remove(pos.asLong());
+                    network.remove(pos);
+                    if (network.getSize() == 0) {
+                        networks.remove(network);
+                    }
+                    markDirty();
+                }
+            });
+        }
+    }
+
     public void rebuildCache() {
         cache.clear();
         for (EssentiaNetwork network : networks) {
             for (BlockPos pos : network.getPositions()) {
-                cache.put(pos.toImmutable(), network);
+                cache.put(pos.asLong(), network);
             }
         }
     }
@@ -100,6 +248,23 @@ public class EssentiaNetworker extends PersistentState {
     }
 
     public void tick() {
+        if (AoAProfiler.isEnabled()) {
+            long start = System.nanoTime();
+            doTick();
+            AoAProfiler.record(AoAProfiler.Section.NETWORKER, getName(world.getDimension()), null,
+                    System.nanoTime() - start, 0, 0);
+        } else {
+            doTick();
+        }
+    }
+
+    protected void doTick() {
+        if (!pendingValidation.isEmpty()) {
+            for (long chunk : pendingValidation.toLongArray()) {
+                validate(chunk);
+            }
+            pendingValidation.clear();
+        }
         processed = 0;
         for (BlockPos pos : new HashSet<>(orphans)) {
             if (processed < processingLimit) {
@@ -115,27 +280,69 @@ public class EssentiaNetworker extends PersistentState {
                 break;
             }
         }
-        for (EssentiaNetwork network : networks) {
-            network.tick();
+        if (AoAConfig.get().parallelNetworkTick && networks.size() > 1) {
+            tickParallel();
+        } else {
+            for (EssentiaNetwork network : networks) {
+                network.tick();
+            }
         }
+        updateChunkIndex();
     }
 
-    public Optional<EssentiaNetwork> getNetwork(BlockPos pos) {
-        {
-            EssentiaNetwork network = cache.get(pos);
-            if (network != null) {
-                if (network.contains(pos)) {
-                    return Optional.of(network);
-                }
+    // Networks plan their transfers in parallel, each against snapshots of its own containers, and the plans are
+    // committed here afterwards. A container reached by two networks gets a snapshot in each, but commit() limits
+    // every transfer by the real containers, so that can't create or destroy essentia.
+    protected void tickParallel() {
+        List<EssentiaNetwork> due = new ArrayList<>();
+        for (EssentiaNetwork network : networks) {
+            if (network.prepare()) {
+                due.add(network);
             }
         }
-        for (EssentiaNetwork network : networks) {
-            if (network.contains(pos)) {
-                cache.put(pos.toImmutable(), network);
-                return Optional.of(network);
+        if (due.isEmpty()) {
+            return;
+        }
+        ForkJoinPool executor = getPool();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(due.size());
+        for (EssentiaNetwork network : due) {
+            tasks.add(executor.submit(network::plan));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        for (EssentiaNetwork network : due) {
+            network.commit();
+        }
+    }
+
+    protected static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threads = AoAConfig.get().networkThreads;
+            if (threads <= 0) {
+                threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
             }
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    public Optional<EssentiaNetwork> getNetwork(BlockPos pos) {
+        long key = pos.asLong();
+        EssentiaNetwork network = cache.get(key);
+        if (network == null) {
+            return Optional.empty();
+        }
+        EssentiaNetwork root = network.find();
+        if (root != network) {
+            cache.put(key, root);
+        }
+        if (root.contains(pos)) {
+            return Optional.of(root);
+        } else {
+            cache.remove(key);
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     public Set<EssentiaNetwork> getConnectedNetworks(BlockPos pos) {
@@ -163,50 +370,179 @@ public class EssentiaNetworker extends PersistentState {
             // Otherwise, add it to any connected networks, creating a new one or merging if necessary
             EssentiaNetwork network = merge(getConnectedNetworks(pos).toArray(new EssentiaNetwork[0]));
             network.add(pos.toImmutable());
-            cache.put(pos.toImmutable(), network);
+            cache.put(pos.asLong(), network);
             markDirty();
         }
     }
 
     // Merges n networks (where n can be 0, thus creating a new, empty network.)
-    // Warning: WILL NOT rebuild nodes automatically.
+    // The largest network absorbs the others and keeps its identity; positions of the absorbed networks keep their
+    // index entries, which resolve to the survivor through EssentiaNetwork.find().
     public EssentiaNetwork merge(EssentiaNetwork... networks) {
-        if (networks.length == 1) {
+        if (networks.length == 0) {
+            EssentiaNetwork network = new EssentiaNetwork(world);
+            this.networks.add(network);
+            markDirty();
+            return network;
+        } else if (networks.length == 1) {
             // If given one network, there's nothing to merge, so just return it
             return networks[0];
         } else {
-            // If given 0 or 2+ networks, create a new network with all the positions of the old ones and delete them
-            EssentiaNetwork mergedNetwork = new EssentiaNetwork(world);
-            this.networks.add(mergedNetwork);
+            EssentiaNetwork largest = networks[0];
+            for (EssentiaNetwork network : networks) {
+                if (network.getSize() > largest.getSize()) {
+                    largest = network;
+                }
+            }
             for (EssentiaNetwork network : networks) {
-                mergedNetwork.getPositions().addAll(network.getPositions());
-                for (BlockPos pos : mergedNetwork.getPositions()) {
-                    cache.put(pos, mergedNetwork);
+                if (network != largest) {
+                    largest.absorb(network);
+                    this.networks.remove(network);
                 }
-                this.networks.remove(network);
             }
-            mergedNetwork.rebuildNodes();
             markDirty();
-            return mergedNetwork;
+            return largest;
         }
     }
 
     public void remove(BlockPos pos, Set<BlockPos> connections) {
         processed++;
         getNetwork(pos).ifPresent((network) -> {
-            cache.remove(pos);
+            cache.remove(pos.asLong());
             network.remove(pos);
-            if (network.getSize() == 0 || connections.size() > 1) {
-                for (BlockPos netPos : network.getPositions()) {
-                    orphans.add(netPos.toImmutable());
-                    cache.remove(netPos);
-                }
+            if (network.getSize() == 0) {
                 networks.remove(network);
+            } else if (connections.size() > 1) {
+                split(network, connections);
             }
             markDirty();
         });
     }
 
+    // Splits a network in place after a pipe with the given connections was removed from it. A breadth-first search is
+    // started from each of its neighbours and the searches are advanced in lockstep; searches that meet are merged,
+    // and a search that runs out of positions has found a complete component, which becomes a new network. As soon
+    // as at most one search is still running, everything it hasn't been separated from stays in the original
+    // network, so the cost is bounded by the size of the smaller components rather than the whole network.
+    protected void split(EssentiaNetwork network, Set<BlockPos> connections) {
+        List<Search> searches = new ArrayList<>();
+        Map<BlockPos, Search> visited = new HashMap<>();
+        for (BlockPos start : connections) {
+            if (network.contains(start) && !visited.containsKey(start)) {
+                Search search = new Search(start);
+                searches.add(search);
+                visited.put(start, search);
+            }
+        }
+
+        while (true) {
+            int running = 0;
+            for (Search search : searches) {
+                if (search.isRunning()) {
+                    running++;
+                }
+            }
+            if (running <= 1) {
+                break;
+            }
+            for (Search search : searches) {
+                if (!search.isRunning()) {
+                    continue;
+                }
+                BlockPos current = search.frontier.poll();
+                for (BlockPos next : getConnections(current)) {
+                    if (!network.contains(next)) {
+                        continue;
+                    }
+                    Search other = visited.get(next);
+                    if (other == null) {
+                        Search owner = search.find();
+                        visited.put(next, owner);
+                        owner.members.add(next);
+                        owner.frontier.add(next);
+                    } else if (other.find() != search.find()) {
+                        Search.union(search, other);
+                    }
+                }
+            }
+        }
+
+        // Finished searches are complete components; if every search finished, the largest one keeps the network.
+        List<Search> components = new ArrayList<>();
+        Search largest = null;
+        boolean anyRunning = false;
+        for (Search search : searches) {
+            if (search.find() != search) {
+                continue;
+            }
+            if (search.isRunning()) {
+                anyRunning = true;
+            } else {
+                components.add(search);
+                if (largest == null || search.members.size() > largest.members.size()) {
+                    largest = search;
+                }
+            }
+        }
+        if (!anyRunning) {
+            components.remove(largest);
+        }
+
+        for (Search component : components) {
+            EssentiaNetwork split = new EssentiaNetwork(world);
+            for (BlockPos pos : component.members) {
+                network.getPositions().remove(pos);
+                split.getPositions().add(pos);
+                cache.put(pos.asLong(), split);
+            }
+            split.markDirty();
+            networks.add(split);
+        }
+        if (!components.isEmpty()) {
+            network.markDirty();
+        }
+    }
+
+    private static class Search {
+        private final Set<BlockPos> members = new HashSet<>();
+        private final Deque<BlockPos> frontier = new ArrayDeque<>();
+        private Search parent = this;
+
+        private Search(BlockPos start) {
+            members.add(start);
+            frontier.add(start);
+        }
+
+        private Search find() {
+            Search root = this;
+            while (root.parent != root) {
+                root = root.parent;
+            }
+            parent = root;
+            return root;
+        }
+
+        private boolean isRunning() {
+            return find() == this && !frontier.isEmpty();
+        }
+
+        // Merges the smaller search into the larger one, which carries on with both frontiers.
+        private static void union(Search a, Search b) {
+            Search rootA = a.find();
+            Search rootB = b.find();
+            if (rootA.members.size() < rootB.members.size()) {
+                Search swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            rootA.members.addAll(rootB.members);
+            rootA.frontier.addAll(rootB.frontier);
+            rootB.members.clear();
+            rootB.frontier.clear();
+            rootB.parent = rootA;
+        }
+    }
+
     @Deprecated
     public void recursiveAdd(BlockPos pos) {
         if (processed < processingLimit) {
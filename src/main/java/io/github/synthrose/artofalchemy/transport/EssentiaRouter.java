@@ -0,0 +1,281 @@
+package io.github.synthrose.artofalchemy.transport;
+
+import io.github.synthrose.artofalchemy.AoAConfig;
+import io.github.synthrose.artofalchemy.essentia.Essentia;
+import io.github.synthrose.artofalchemy.essentia.EssentiaContainer;
+import io.github.synthrose.artofalchemy.essentia.RegistryEssentia;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.block.entity.BlockEntity;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// Moves essentia from a set of source nodes to a set of sink nodes in a single linear pass.
+// Sinks are bucketed by the essentia they accept, and each bucket keeps a cursor past the sinks that are already full,
+// so the cost of a pass grows with (sources + sinks) * essentia types rather than with sources * sinks.
+//
+// Endpoints can also be resolved to snapshots, detached copies of their containers. Routing between snapshots
+// touches neither the world nor the real containers, so it can run off the server thread; the transfers are
+// recorded and later applied to the real containers by commit(), on the server thread.
+//
+// Transfers can be limited by limit(): a budget for the whole network, and a rate per tick for each port.
+public class EssentiaRouter {
+
+    protected final List<Endpoint> sources = new ArrayList<>();
+    protected final Map<Essentia, List<Endpoint>> buckets = new HashMap<>();
+    protected final Map<Essentia, Integer> cursors = new HashMap<>();
+    protected final Set<BlockEntity> changed = new HashSet<>();
+    protected final Predicate<NetworkNode> filter;
+    // Snapshot of each real container, so nodes sharing a container also share its snapshot
+    protected final Map<EssentiaContainer, EssentiaContainer> snapshots = new IdentityHashMap<>();
+    protected final List<Transfer> planned = new ArrayList<>();
+    // What each node can still move until the next limit(), filled on first use
+    protected final Object2IntOpenHashMap<NetworkNode> allowances = new Object2IntOpenHashMap<>();
+    protected final int[] rates = new int[NetworkNode.Type.values().length];
+    protected int budget = Integer.MAX_VALUE;
+    protected int ticks = 1;
+
+    public EssentiaRouter() {
+        this((node) -> true);
+    }
+
+    // Nodes rejected by the filter are left out of every pass, without their block entities being looked up
+    public EssentiaRouter(Predicate<NetworkNode> filter) {
+        this.filter = filter;
+        allowances.defaultReturnValue(-1);
+        Arrays.fill(rates, Integer.MAX_VALUE);
+    }
+
+    // Limits the transfers until the next call to at most the budget in total, and for each port to its configured
+    // rate times the given number of ticks
+    public void limit(int budget, int ticks) {
+        AoAConfig.PortSettings settings = AoAConfig.get().portSettings;
+        rates[NetworkNode.Type.PULL.ordinal()] = toRate(settings.inserterRate);
+        rates[NetworkNode.Type.PUSH.ordinal()] = toRate(settings.extractorRate);
+        rates[NetworkNode.Type.PASSIVE.ordinal()] = toRate(settings.passiveRate);
+        this.budget = budget;
+        this.ticks = ticks;
+        allowances.clear();
+    }
+
+    protected static int toRate(int rate) {
+        return rate > 0 ? rate : Integer.MAX_VALUE;
+    }
+
+    protected int getAllowance(NetworkNode node) {
+        int allowance = allowances.getInt(node);
+        if (allowance < 0) {
+            int rate = rates[node.getType().ordinal()];
+            allowance = rate == Integer.MAX_VALUE ? rate : (int) Math.min((long) rate * ticks, Integer.MAX_VALUE);
+            allowances.put(node, allowance);
+        }
+        return allowance;
+    }
+
+    protected void spend(NetworkNode node, int amount) {
+        int allowance = getAllowance(node);
+        if (allowance != Integer.MAX_VALUE) {
+            allowances.put(node, allowance - amount);
+        }
+    }
+
+    // Routes as much essentia as possible from the given sources to the given sinks, returning the amount moved.
+    // Block entities whose containers changed are collected until flush() is called.
+    public int route(Collection<NetworkNode> from, Collection<NetworkNode> to) {
+        return route(resolve(from, false), resolve(to, false));
+    }
+
+    // Looks up the endpoints of the given nodes; must be called on the server thread. With snapshot set, the
+    // endpoints route between copies of the containers, which stay the same until commit() is called.
+    public List<Endpoint> resolve(Collection<NetworkNode> nodes, boolean snapshot) {
+        List<Endpoint> endpoints = new ArrayList<>(nodes.size());
+        for (NetworkNode node : nodes) {
+            if (!filter.test(node)) {
+                continue;
+            }
+            Endpoint endpoint = Endpoint.of(node);
+            if (endpoint != null) {
+                if (snapshot) {
+                    EssentiaContainer copy = snapshots.computeIfAbsent(endpoint.live, EssentiaContainer::copy);
+                    endpoint = new Endpoint(node, endpoint.blockEntity, endpoint.live, copy);
+                }
+                endpoints.add(endpoint);
+            }
+        }
+        return endpoints;
+    }
+
+    public int route(List<Endpoint> from, List<Endpoint> to) {
+        if (budget <= 0) {
+            return 0;
+        }
+        planSinks(to);
+        if (buckets.isEmpty()) {
+            return 0;
+        }
+        planSources(from);
+
+        int moved = 0;
+        for (Endpoint source : sources) {
+            for (Essentia essentia : RegistryEssentia.INSTANCE) {
+                if (budget <= 0 || getAllowance(source.node) <= 0) {
+                    break;
+                }
+                List<Endpoint> bucket = buckets.get(essentia);
+                if (bucket != null && source.container.whitelisted(essentia)) {
+                    moved += routeEssentia(source, essentia, bucket);
+                }
+            }
+        }
+
+        sources.clear();
+        buckets.clear();
+        cursors.clear();
+        return moved;
+    }
+
+    // Applies the transfers planned between snapshots to the real containers, returning the amount moved.
+    // Each transfer is limited again by the real containers, in case they changed since they were resolved.
+    public int commit() {
+        int moved = 0;
+        for (Transfer transfer : planned) {
+            int transferred = transfer.from.live.pushEssentia(transfer.to.live, transfer.essentia, transfer.amount);
+            if (transferred > 0) {
+                moved += transferred;
+                changed.add(transfer.from.blockEntity);
+                changed.add(transfer.to.blockEntity);
+            }
+        }
+        planned.clear();
+        snapshots.clear();
+        return moved;
+    }
+
+    // Marks every block entity touched since the last flush as dirty, exactly once.
+    public void flush() {
+        for (BlockEntity be : changed) {
+            be.markDirty();
+        }
+        changed.clear();
+    }
+
+    protected int routeEssentia(Endpoint source, Essentia essentia, List<Endpoint> bucket) {
+        EssentiaContainer from = source.container;
+        int supply = from.getCount(essentia);
+        if (supply <= 0) {
+            return 0;
+        }
+
+        // Sinks before the cursor are full or out of allowance for the rest of the pass; a sink found in either state
+        // is swapped down to the cursor, so no later source scans it again
+        int cursor = cursors.getOrDefault(essentia, 0);
+        int moved = 0;
+        for (int i = cursor; i < bucket.size() && supply > 0; i++) {
+            Endpoint sink = bucket.get(i);
+            if (sink.container == from) {
+                continue;
+            }
+            if (sink.container.isFull() || getAllowance(sink.node) <= 0) {
+                Collections.swap(bucket, cursor++, i);
+                continue;
+            }
+            int limit = Math.min(Math.min(supply, budget), Math.min(getAllowance(source.node), getAllowance(sink.node)));
+            if (limit <= 0) {
+                break;
+            }
+            int transferred = from.pushEssentia(sink.container, essentia, limit);
+            if (transferred > 0) {
+                moved += transferred;
+                if (!from.isInfinite()) {
+                    supply -= transferred;
+                }
+                if (budget != Integer.MAX_VALUE) {
+                    budget -= transferred;
+                }
+                spend(source.node, transferred);
+                spend(sink.node, transferred);
+                if (sink.container.isFull() || getAllowance(sink.node) <= 0) {
+                    Collections.swap(bucket, cursor++, i);
+                }
+                if (source.isSnapshot()) {
+                    planned.add(new Transfer(source, sink, essentia, transferred));
+                } else {
+                    changed.add(source.blockEntity);
+                    changed.add(sink.blockEntity);
+                }
+            }
+        }
+        cursors.put(essentia, cursor);
+        return moved;
+    }
+
+    protected void planSinks(List<Endpoint> endpoints) {
+        for (Endpoint sink : endpoints) {
+            if (!sink.container.isInput() || sink.container.isFull()) {
+                continue;
+            }
+            for (Essentia essentia : RegistryEssentia.INSTANCE) {
+                if (sink.container.whitelisted(essentia)) {
+                    buckets.computeIfAbsent(essentia, (key) -> new ArrayList<>()).add(sink);
+                }
+            }
+        }
+    }
+
+    protected void planSources(List<Endpoint> endpoints) {
+        for (Endpoint source : endpoints) {
+            if (source.container.isOutput() && !source.container.isEmpty()) {
+                sources.add(source);
+            }
+        }
+    }
+
+    public static class Endpoint {
+        protected final NetworkNode node;
+        protected final BlockEntity blockEntity;
+        protected final EssentiaContainer live;
+        // The container routed against: the real one, or a snapshot of it
+        protected final EssentiaContainer container;
+
+        protected Endpoint(NetworkNode node, BlockEntity blockEntity, EssentiaContainer live,
+                           EssentiaContainer container) {
+            this.node = node;
+            this.blockEntity = blockEntity;
+            this.live = live;
+            this.container = container;
+        }
+
+        protected boolean isSnapshot() {
+            return container != live;
+        }
+
+        protected static Endpoint of(NetworkNode node) {
+            BlockEntity be = node.getBlockEntity();
+            if (!(be instanceof HasEssentia)) {
+                return null;
+            }
+            EssentiaContainer container;
+            if (node.getDirection().isPresent()) {
+                container = ((HasEssentia) be).getContainer(node.getDirection().get().getOpposite());
+            } else {
+                container = ((HasEssentia) be).getContainer();
+            }
+            return container == null ? null : new Endpoint(node, be, container, container);
+        }
+    }
+
+    protected static class Transfer {
+        protected final Endpoint from;
+        protected final Endpoint to;
+        protected final Essentia essentia;
+        protected final int amount;
+
+        protected Transfer(Endpoint from, Endpoint to, Essentia essentia, int amount) {
+            this.from = from;
+            this.to = to;
+            this.essentia = essentia;
+            this.amount = amount;
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package io.github.synthrose.artofalchemy.transport;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.util.StringIdentifiable;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.World;
 
@@ -35,15 +36,22 @@ public class NetworkNode {
     }
 
     public Optional<Direction> getDirection() {
-        return Optional.of(dir);
+        return Optional.ofNullable(dir);
+    }
+
+    // Position of the block entity this node exchanges essentia with
+    public BlockPos getTargetPos() {
+        return dir != null ? pos.offset(dir) : pos;
+    }
+
+    // Packed position of the chunk holding the target block entity
+    public long getChunk() {
+        BlockPos target = getTargetPos();
+        return ChunkPos.toLong(target.getX() >> 4, target.getZ() >> 4);
     }
 
     public BlockEntity getBlockEntity() {
-        if (dir != null) {
-            return world.getBlockEntity(pos.offset(dir));
-        } else {
-            return world.getBlockEntity(pos);
-        }
+        return world.getBlockEntity(getTargetPos());
     }
 
     public enum Type implements StringIdentifiable {
@@ -0,0 +1,169 @@
+package io.github.synthrose.artofalchemy.util;
+
+import io.github.synthrose.artofalchemy.recipe.RecipeIndex;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.Registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Records tick timings of essentia networks and alchemy machines for /aoa profile. Samples are folded into running
+// totals per source as they come in, so every source is ranked over the whole profiling run and recording from the
+// network threads never waits on a shared lock. Callers check isEnabled() before doing any timing, so while profiling
+// is off a tick costs one volatile read.
+public class AoAProfiler {
+
+    private static volatile boolean enabled = false;
+
+    private static final ConcurrentHashMap<Source, Entry> entries = new ConcurrentHashMap<>();
+    private static final LongAdder sampleCount = new LongAdder();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AoAProfiler.enabled = enabled;
+    }
+
+    public static void reset() {
+        entries.clear();
+        sampleCount.reset();
+    }
+
+    public static void profileMachine(BlockEntity be, Runnable tick) {
+        long lookupsBefore = RecipeIndex.getHits() + RecipeIndex.getMisses();
+        long start = System.nanoTime();
+        tick.run();
+        long elapsed = System.nanoTime() - start;
+        int lookupCount = (int) (RecipeIndex.getHits() + RecipeIndex.getMisses() - lookupsBefore);
+        record(Section.MACHINE, String.valueOf(Registry.BLOCK_ENTITY_TYPE.getId(be.getType())), be.getPos(),
+                elapsed, 0, lookupCount);
+    }
+
+    // Records one sample; pos may be null for samples that aren't tied to a position
+    public static void record(Section section, String name, BlockPos pos, long elapsed, int transferred,
+                              int lookupCount) {
+        Source source = new Source(section, name, pos != null ? pos.asLong() : Long.MIN_VALUE);
+        Entry entry = entries.computeIfAbsent(source, Entry::new);
+        entry.samples.increment();
+        entry.totalNanos.add(elapsed);
+        entry.maxNanos.accumulate(elapsed);
+        entry.transfers.add(transferred);
+        entry.lookups.add(lookupCount);
+        sampleCount.increment();
+    }
+
+    // Records one network sample. Samples are keyed by the network alone, since its blocks change as it grows; the
+    // position shown in reports is looked up from the network when the report is printed.
+    public static void recordNetwork(UUID uuid, Supplier<BlockPos> locator, long elapsed, int transferred) {
+        Source source = new Source(Section.NETWORK, "network " + uuid, Long.MIN_VALUE);
+        Entry entry = entries.computeIfAbsent(source, Entry::new);
+        entry.locator = locator;
+        entry.samples.increment();
+        entry.totalNanos.add(elapsed);
+        entry.maxNanos.accumulate(elapsed);
+        entry.transfers.add(transferred);
+        sampleCount.increment();
+    }
+
+    public static long getSampleCount() {
+        return sampleCount.sum();
+    }
+
+    // Returns the sources with the highest total time first
+    public static List<Entry> getTop(int count) {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort((entry1, entry2) -> Long.compare(entry2.getTotalNanos(), entry1.getTotalNanos()));
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    public enum Section {
+        NETWORKER,
+        NETWORK,
+        MACHINE
+    }
+
+    private static final class Source {
+        private final Section section;
+        private final String name;
+        private final long pos;
+
+        private Source(Section section, String name, long pos) {
+            this.section = section;
+            this.name = name;
+            this.pos = pos;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) obj;
+            return section == other.section && pos == other.pos && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * section.hashCode() + Objects.hashCode(name)) + Long.hashCode(pos);
+        }
+    }
+
+    public static class Entry {
+        public final Section section;
+        public final String name;
+        private final BlockPos pos;
+        private volatile Supplier<BlockPos> locator = null;
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder transfers = new LongAdder();
+        private final LongAdder lookups = new LongAdder();
+
+        private Entry(Source source) {
+            this.section = source.section;
+            this.name = source.name;
+            this.pos = source.pos != Long.MIN_VALUE ? BlockPos.fromLong(source.pos) : null;
+        }
+
+        // May be null for samples that aren't tied to a position
+        public BlockPos getPos() {
+            Supplier<BlockPos> locator = this.locator;
+            return locator != null ? locator.get() : pos;
+        }
+
+        public long getSamples() {
+            return samples.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getTransfers() {
+            return transfers.sum();
+        }
+
+        public long getLookups() {
+            return lookups.sum();
+        }
+
+        public long getAverageNanos() {
+            long count = getSamples();
+            return count > 0 ? getTotalNanos() / count : 0;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package io.github.synthrose.artofalchemy.util;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.state.property.BooleanProperty;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+// A purely visual boolean block state property (LIT, FILLED...) driven by a block entity. The block state is only
+// written on real transitions: turning on is written right away, while turning off waits until the flag has stayed
+// off for a delay, so a machine that stalls for a moment doesn't cause two block updates and two light updates.
+public class LazyStateFlag {
+
+	public static final int OFF_DELAY = 20;
+
+	private final BooleanProperty property;
+	private final int offDelay;
+	// The value last written to or read from the world, or null if it hasn't been read yet
+	private Boolean applied = null;
+	private boolean wanted = false;
+	private long wantedSince = 0;
+
+	public LazyStateFlag(BooleanProperty property, int offDelay) {
+		this.property = property;
+		this.offDelay = offDelay;
+	}
+
+	// Returns true while a write is still pending, so that the caller keeps ticking until it's done
+	public boolean update(World world, BlockPos pos, boolean value) {
+		long time = world.getTime();
+		if (value != wanted) {
+			wanted = value;
+			wantedSince = time;
+		}
+		if (applied == null) {
+			BlockState state = world.getBlockState(pos);
+			if (!state.contains(property)) {
+				return false;
+			}
+			applied = state.get(property);
+		}
+		if (applied == value) {
+			return false;
+		} else if (value || time - wantedSince >= offDelay) {
+			BlockState state = world.getBlockState(pos);
+			if (state.contains(property)) {
+				// Notify clients only; these properties don't matter to neighbours
+				world.setBlockState(pos, state.with(property, value), 2);
+			}
+			applied = value;
+			return false;
+		} else {
+			return true;
+		}
+	}
+
+}